@@ -32,12 +32,46 @@ class Column {
         return _name;
     }
 
-    /** Assuming that for each k, ROWS[k] is the index of a row from my
-     *  kth table, return the value of my column from the appropriate
-     *  row.  It is assumed that all columns with the same name have
-     *  the same value. */
-    String getFrom(Integer... rows) {
-        return _table.get(rows[_tableIndex], _column);
+    /** Return the table from which I select. */
+    Table getTable() {
+        return _table;
+    }
+
+    /** Return the position of getTable() among the tables from which I
+     *  was created to select. */
+    int getTableIndex() {
+        return _tableIndex;
+    }
+
+    /** Return the number of my column within getTable(). */
+    int getColumn() {
+        return _column;
+    }
+
+    /** Return the values of my column, indexed by stored position. */
+    ValueList getValues() {
+        return _table.values(_column);
+    }
+
+    /** Return whichever of ROW1 and ROW2 designates a row of my table,
+     *  assuming that they designate rows of my first and second tables,
+     *  respectively. */
+    int rowFrom(int row1, int row2) {
+        return _tableIndex == 0 ? row1 : row2;
+    }
+
+    /** Assuming that ROWS[k] is the position at which a row is stored in
+     *  my kth table, return the element of ROWS that designates a row of
+     *  my table. */
+    int rowFrom(int[] rows) {
+        return rows[_tableIndex];
+    }
+
+    /** Return the value of my column from whichever of the rows stored
+     *  at positions ROW1 and ROW2 of my first and second tables is in my
+     *  table. */
+    String getFrom(int row1, int row2) {
+        return _table.value(rowFrom(row1, row2), _column);
     }
 
     /** Column name denoted by THIS. */
@@ -0,0 +1,611 @@
+package db61b;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+
+import static db61b.Utils.error;
+
+/** Reading and writing Tables in a binary, column-by-column format,
+ *  stored in files named NAME.dbc.  Rows are written in lexicographic
+ *  order and each column is stored contiguously, so that a stored table
+ *  can be reopened by mapping its columns into memory and using them in
+ *  place, with no parsing, sorting, or checking for duplicates.
+ *
+ *  A file consists of a header followed by the data for each column.
+ *  The header contains MAGIC, the stamp of the file NAME.db from which
+ *  the table was stored (see sourceStamp), the number of columns, and
+ *  the number of rows, followed by, for each column, its title, the
+ *  ordinal of its Type, the encoding of its data, the offset and length
+ *  of its data within the file, and the offset of its zone map (see
+ *  ZoneMap).  The zone maps follow the data of all columns; each
+ *  consists of the 4-byte row numbers of the smallest value in each
+ *  block of rows, followed by those of the largest.  Column data is
+ *  encoded as follows, with all numbers big-endian:
+ *
+ *    INTS:        One 4-byte value per row.
+ *    LONGS:       One 8-byte value per row.
+ *    DICTIONARY:  The number of distinct values, then each distinct
+ *                 value as a 4-byte length followed by that many bytes
+ *                 of UTF-8, then a 4-byte code per row, which is the
+ *                 position of the row's value in that list.
+ *    PLAIN:       The UTF-8 bytes of all the values, concatenated,
+ *                 followed by the 4-byte offset within them of the
+ *                 start of each value, and then of the end of the
+ *                 last one.
+ *  @author Bo Bi
+ */
+class ColumnarFile {
+
+    /** First four bytes of a columnar file. */
+    static final int MAGIC = 0xdb61bc03;
+
+    /** Column encodings. */
+    static final byte INTS = 0, LONGS = 1, DICTIONARY = 2, PLAIN = 3;
+
+    /** Return true iff there is a file NAME.dbc that load should read
+     *  rather than NAME.db: that is, iff NAME.db does not exist or is
+     *  unchanged since NAME.dbc was stored. */
+    static boolean isCurrent(String name) {
+        File columnar = new File(name + ".dbc"),
+            text = new File(name + ".db");
+        if (!columnar.isFile()) {
+            return false;
+        } else if (!text.exists()) {
+            return true;
+        }
+        try (DataInputStream input = new DataInputStream(
+                 new BufferedInputStream(new FileInputStream(columnar)))) {
+            return input.readInt() == MAGIC
+                && input.readUTF().equals(sourceStamp(name));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /** Return a string identifying the current contents of the file
+     *  NAME.db: its length, modification time, and file key (which
+     *  changes whenever DBFile replaces the file), or the empty string if
+     *  there is no such file.  Any other I/O error causes a
+     *  DBException. */
+    static String sourceStamp(String name) {
+        try {
+            BasicFileAttributes attributes =
+                Files.readAttributes(Paths.get(name + ".db"),
+                                     BasicFileAttributes.class);
+            return String.format("%d %s %s", attributes.size(),
+                                 attributes.lastModifiedTime(),
+                                 attributes.fileKey());
+        } catch (NoSuchFileException e) {
+            return "";
+        } catch (IOException e) {
+            throw error("trouble reading %s.db", name);
+        }
+    }
+
+    /** Write TABLE into the file NAME.dbc, replacing any previous
+     *  contents.  The data is written to a temporary file that then
+     *  replaces NAME.dbc, so that tables still mapped from the old file
+     *  are unaffected.  The header records the stamp of NAME.db, after
+     *  any pending write to it has finished.  Any I/O errors cause a
+     *  DBException. */
+    static void write(Table table, String name) {
+        DBFile.awaitWrite(name);
+        String stamp = sourceStamp(name);
+        File target = new File(name + ".dbc"),
+            temp = new File(name + ".dbc.tmp");
+        int columns = table.columns();
+        long[] offsets = new long[columns], lengths = new long[columns],
+            zoneOffsets = new long[columns];
+        try (RandomAccessFile file = new RandomAccessFile(temp, "rw")) {
+            file.setLength(0);
+            DataOutputStream output =
+                new DataOutputStream(new BufferedOutputStream(
+                    Channels.newOutputStream(file.getChannel()),
+                    BUFFER_SIZE));
+            FileChannel channel = file.getChannel();
+            byte[] encodings = new byte[columns];
+            writeHeader(output, table, stamp, encodings, offsets,
+                        lengths, zoneOffsets);
+            output.flush();
+            for (int i = 0; i < columns; i += 1) {
+                offsets[i] = channel.position();
+                encodings[i] = writeColumn(output, table, i);
+                output.flush();
+                lengths[i] = channel.position() - offsets[i];
+            }
+            for (int i = 0; i < columns; i += 1) {
+                zoneOffsets[i] = channel.position();
+                writeZoneMap(output, table, i);
+                output.flush();
+            }
+            channel.position(0);
+            output = new DataOutputStream(new BufferedOutputStream(
+                Channels.newOutputStream(channel)));
+            writeHeader(output, table, stamp, encodings, offsets,
+                        lengths, zoneOffsets);
+            output.flush();
+        } catch (IOException e) {
+            temp.delete();
+            throw error("trouble writing to %s.dbc", name);
+        }
+        try {
+            Files.move(temp.toPath(), target.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            temp.delete();
+            throw error("trouble writing to %s.dbc", name);
+        }
+    }
+
+    /** Open the file NAME.dbc and return the Table it contains, whose
+     *  columns are mapped from the file.  Format errors in the file
+     *  cause a DBException.  The counts and lengths in the file are
+     *  checked against its size before anything is allocated for
+     *  them. */
+    static Table read(String name) {
+        File source = new File(name + ".dbc");
+        try (RandomAccessFile file = new RandomAccessFile(source, "r")) {
+            FileChannel channel = file.getChannel();
+            DataInputStream input = new DataInputStream(
+                new BufferedInputStream(Channels.newInputStream(channel)));
+            if (input.readInt() != MAGIC) {
+                throw error("%s.dbc is not a columnar table file", name);
+            }
+            input.readUTF();
+            int columns = input.readInt(), rows = input.readInt();
+            long size = channel.size();
+            if (columns < 0 || rows < 0 || columns > size) {
+                throw error("problem reading from %s.dbc", name);
+            }
+            String[] titles = new String[columns];
+            ValueList[] data = new ValueList[columns];
+            ZoneMap[] zoneMaps = new ZoneMap[columns];
+            for (int i = 0; i < columns; i += 1) {
+                titles[i] = input.readUTF();
+                Type type = Type.values()[input.readByte()];
+                byte encoding = input.readByte();
+                long offset = input.readLong(), length = input.readLong();
+                checkBounds(offset, length, size);
+                ByteBuffer buffer =
+                    channel.map(FileChannel.MapMode.READ_ONLY, offset,
+                                length);
+                data[i] = openColumn(encoding, buffer, rows);
+                if (data[i].getType() != type) {
+                    throw error("problem reading from %s.dbc", name);
+                }
+                zoneMaps[i] = readZoneMap(channel, input.readLong(), rows);
+            }
+            return new Table(titles, data, zoneMaps);
+        } catch (DBException e) {
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            throw error("problem reading from %s.dbc", name);
+        }
+    }
+
+    /** Write the header describing TABLE to OUTPUT, where STAMP is the
+     *  stamp of its source file, ENCODINGS, OFFSETS, and LENGTHS describe
+     *  the data of each column, and ZONEOFFSETS give the positions of
+     *  their zone maps. */
+    private static void writeHeader(DataOutputStream output, Table table,
+                                    String stamp, byte[] encodings,
+                                    long[] offsets, long[] lengths,
+                                    long[] zoneOffsets)
+        throws IOException {
+        output.writeInt(MAGIC);
+        output.writeUTF(stamp);
+        output.writeInt(table.columns());
+        output.writeInt(table.size());
+        for (int i = 0; i < table.columns(); i += 1) {
+            output.writeUTF(table.getTitle(i));
+            output.writeByte(table.getType(i).ordinal());
+            output.writeByte(encodings[i]);
+            output.writeLong(offsets[i]);
+            output.writeLong(lengths[i]);
+            output.writeLong(zoneOffsets[i]);
+        }
+    }
+
+    /** Write the zone map of column COL of TABLE to OUTPUT, for its rows
+     *  in lexicographic order, as they are written by writeColumn. */
+    private static void writeZoneMap(DataOutputStream output, Table table,
+                                     int col) throws IOException {
+        ValueList values = table.values(col);
+        ZoneMap zoneMap =
+            new ZoneMap(table.size(),
+                        (r0, r1) -> values.compare(table.storedRow(r0),
+                                                   table.storedRow(r1)));
+        for (int b = 0; b < zoneMap.blocks(); b += 1) {
+            output.writeInt(zoneMap.minRow(b));
+        }
+        for (int b = 0; b < zoneMap.blocks(); b += 1) {
+            output.writeInt(zoneMap.maxRow(b));
+        }
+    }
+
+    /** Return the zone map of a column of ROWS rows that is stored at
+     *  OFFSET in CHANNEL, after checking that each row it records lies
+     *  within its block. */
+    private static ZoneMap readZoneMap(FileChannel channel, long offset,
+                                       int rows) throws IOException {
+        int blocks = (rows + ZoneMap.BLOCK_SIZE - 1) >>> ZoneMap.BLOCK_BITS;
+        checkBounds(offset, 8L * blocks, channel.size());
+        IntBuffer buffer =
+            channel.map(FileChannel.MapMode.READ_ONLY, offset, 8L * blocks)
+            .asIntBuffer();
+        int[] minRows = new int[blocks], maxRows = new int[blocks];
+        buffer.get(minRows);
+        buffer.get(maxRows);
+        for (int b = 0; b < blocks; b += 1) {
+            int start = b << ZoneMap.BLOCK_BITS,
+                size = Math.min(rows - start, ZoneMap.BLOCK_SIZE);
+            checkBounds(minRows[b] - start, 1, size);
+            checkBounds(maxRows[b] - start, 1, size);
+        }
+        return new ZoneMap(minRows, maxRows, blocks);
+    }
+
+    /** Write the values of column COL of TABLE to OUTPUT in lexicographic
+     *  order of TABLE's rows, returning the encoding used. */
+    private static byte writeColumn(DataOutputStream output, Table table,
+                                    int col) throws IOException {
+        ValueList values = table.values(col);
+        int rows = table.size();
+        switch (values.getType()) {
+        case INT:
+            for (int r = 0; r < rows; r += 1) {
+                output.writeInt((int) values.longAt(table.storedRow(r)));
+            }
+            return INTS;
+        case LONG:
+            for (int r = 0; r < rows; r += 1) {
+                output.writeLong(values.longAt(table.storedRow(r)));
+            }
+            return LONGS;
+        default:
+            if (values.encode("") != ValueList.NOT_CODED) {
+                writeDictionary(output, table, values);
+                return DICTIONARY;
+            }
+            writePlain(output, table, values);
+            return PLAIN;
+        }
+    }
+
+    /** Write the dictionary-coded VALUES, a column of TABLE, to
+     *  OUTPUT. */
+    private static void writeDictionary(DataOutputStream output, Table table,
+                                        ValueList values)
+        throws IOException {
+        HashMap<Integer, Integer> recoding = new HashMap<>();
+        int rows = table.size();
+        int[] codes = new int[rows];
+        for (int r = 0; r < rows; r += 1) {
+            int code = values.codeAt(table.storedRow(r));
+            Integer newCode = recoding.get(code);
+            if (newCode == null) {
+                newCode = recoding.size();
+                recoding.put(code, newCode);
+            }
+            codes[r] = newCode;
+        }
+        String[] dictionary = new String[recoding.size()];
+        for (int r = 0; r < rows; r += 1) {
+            dictionary[codes[r]] = values.get(table.storedRow(r));
+        }
+        output.writeInt(dictionary.length);
+        for (String value : dictionary) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+        for (int code : codes) {
+            output.writeInt(code);
+        }
+    }
+
+    /** Write VALUES, a column of TABLE, to OUTPUT in PLAIN encoding. */
+    private static void writePlain(DataOutputStream output, Table table,
+                                   ValueList values)
+        throws IOException {
+        int rows = table.size();
+        int[] offsets = new int[rows + 1];
+        long length = 0;
+        for (int r = 0; r < rows; r += 1) {
+            String value = values.get(table.storedRow(r));
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            output.write(bytes);
+            length += bytes.length;
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("column too large");
+            }
+            offsets[r + 1] = (int) length;
+        }
+        for (int offset : offsets) {
+            output.writeInt(offset);
+        }
+    }
+
+    /** Return a ValueList containing the ROWS values encoded in BUFFER
+     *  using ENCODING. */
+    private static ValueList openColumn(byte encoding, ByteBuffer buffer,
+                                        int rows) {
+        switch (encoding) {
+        case INTS:
+            return new MappedInts(buffer, rows);
+        case LONGS:
+            return new MappedLongs(buffer, rows);
+        case DICTIONARY:
+            return new MappedDictionary(buffer, rows);
+        case PLAIN:
+            return new MappedStrings(buffer, rows);
+        default:
+            throw error("unknown column encoding: %d", encoding);
+        }
+    }
+
+    /** Throw an IndexOutOfBoundsException unless the LENGTH bytes
+     *  starting at OFFSET lie within the first SIZE bytes of a file or
+     *  buffer. */
+    private static void checkBounds(long offset, long length, long size) {
+        if (offset < 0 || length < 0 || length > size - offset) {
+            throw new IndexOutOfBoundsException();
+        }
+    }
+
+    /** Return the string whose UTF-8 encoding is the LENGTH bytes of
+     *  BUFFER starting at POSITION. */
+    private static String decode(ByteBuffer buffer, int position,
+                                 int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer source = buffer.duplicate();
+        source.position(position);
+        source.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Size of the output buffer used by write. */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /** A read-only ValueList whose values are mapped from a file.  It
+     *  must be replaced by mutable() before anything is added to it. */
+    private abstract static class MappedValues extends ValueList {
+
+        /** A list of SIZE values. */
+        MappedValues(int size) {
+            _size = size;
+        }
+
+        @Override
+        int size() {
+            return _size;
+        }
+
+        @Override
+        void add(String value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        ValueList mutable() {
+            ValueList copy = getType().newValueList();
+            for (int k = 0; k < _size; k += 1) {
+                copy.add(get(k));
+            }
+            return copy;
+        }
+
+        /** Return K, after checking that it is a valid index. */
+        int check(int k) {
+            if (k < 0 || k >= _size) {
+                throw new IndexOutOfBoundsException();
+            }
+            return k;
+        }
+
+        /** My number of values. */
+        private final int _size;
+    }
+
+    /** A mapped list in INTS encoding. */
+    private static class MappedInts extends MappedValues {
+
+        /** The ROWS values in BUFFER. */
+        MappedInts(ByteBuffer buffer, int rows) {
+            super(rows);
+            checkBounds(0, 4L * rows, buffer.limit());
+            _buffer = buffer;
+        }
+
+        @Override
+        Type getType() {
+            return Type.INT;
+        }
+
+        @Override
+        String get(int k) {
+            return Integer.toString(_buffer.getInt(4 * check(k)));
+        }
+
+        @Override
+        long longAt(int k) {
+            return _buffer.getInt(4 * check(k));
+        }
+
+        @Override
+        int compare(int k0, int k1) {
+            return Long.compare(longAt(k0), longAt(k1));
+        }
+
+        @Override
+        boolean matches(int k, String value) {
+            return Type.INT.accepts(value)
+                && longAt(k) == Integer.parseInt(value);
+        }
+
+        /** The encoded values. */
+        private final ByteBuffer _buffer;
+    }
+
+    /** A mapped list in LONGS encoding. */
+    private static class MappedLongs extends MappedValues {
+
+        /** The ROWS values in BUFFER. */
+        MappedLongs(ByteBuffer buffer, int rows) {
+            super(rows);
+            checkBounds(0, 8L * rows, buffer.limit());
+            _buffer = buffer;
+        }
+
+        @Override
+        Type getType() {
+            return Type.LONG;
+        }
+
+        @Override
+        String get(int k) {
+            return Long.toString(longAt(k));
+        }
+
+        @Override
+        long longAt(int k) {
+            return _buffer.getLong(8 * check(k));
+        }
+
+        @Override
+        int compare(int k0, int k1) {
+            return Long.compare(longAt(k0), longAt(k1));
+        }
+
+        @Override
+        boolean matches(int k, String value) {
+            return Type.LONG.accepts(value)
+                && longAt(k) == Long.parseLong(value);
+        }
+
+        /** The encoded values. */
+        private final ByteBuffer _buffer;
+    }
+
+    /** A mapped list in DICTIONARY encoding.  The dictionary itself is
+     *  decoded when the list is opened; the codes are used in place. */
+    private static class MappedDictionary extends MappedValues {
+
+        /** The ROWS values in BUFFER, after checking that each code
+         *  refers to a value in the dictionary. */
+        MappedDictionary(ByteBuffer buffer, int rows) {
+            super(rows);
+            int position = 0, limit = buffer.limit();
+            int count = buffer.getInt(position);
+            checkBounds(4, 4L * count, limit);
+            _dictionary = new String[count];
+            position += 4;
+            for (int c = 0; c < count; c += 1) {
+                int length = buffer.getInt(position);
+                checkBounds(position + 4, length, limit);
+                _dictionary[c] = decode(buffer, position + 4, length);
+                position += 4 + length;
+            }
+            checkBounds(position, 4L * rows, limit);
+            _codes = buffer;
+            _codesStart = position;
+            for (int k = 0; k < rows; k += 1) {
+                checkBounds(codeAt(k), 1, count);
+            }
+        }
+
+        @Override
+        String get(int k) {
+            return _dictionary[codeAt(k)];
+        }
+
+        @Override
+        int compare(int k0, int k1) {
+            int c0 = codeAt(k0), c1 = codeAt(k1);
+            if (c0 == c1) {
+                return 0;
+            }
+            return _dictionary[c0].compareTo(_dictionary[c1]);
+        }
+
+        @Override
+        boolean matches(int k, String value) {
+            return codeAt(k) == encode(value);
+        }
+
+        @Override
+        int encode(String value) {
+            if (_encoding == null) {
+                _encoding = new HashMap<>();
+                for (int c = 0; c < _dictionary.length; c += 1) {
+                    _encoding.put(_dictionary[c], c);
+                }
+            }
+            Integer code = _encoding.get(value);
+            return code == null ? ABSENT : code;
+        }
+
+        @Override
+        int codeAt(int k) {
+            return _codes.getInt(_codesStart + 4 * check(k));
+        }
+
+        /** The distinct values, indexed by code. */
+        private final String[] _dictionary;
+        /** Maps each distinct value to its code, once needed. */
+        private HashMap<String, Integer> _encoding;
+        /** Buffer containing the codes, starting at _codesStart. */
+        private final ByteBuffer _codes;
+        /** Position of the first code in _codes. */
+        private final int _codesStart;
+    }
+
+    /** A mapped list in PLAIN encoding. */
+    private static class MappedStrings extends MappedValues {
+
+        /** The ROWS values in BUFFER, after checking that the offsets of
+         *  the values are in order and lie within their bytes. */
+        MappedStrings(ByteBuffer buffer, int rows) {
+            super(rows);
+            checkBounds(0, 4L * (rows + 1), buffer.limit());
+            _buffer = buffer;
+            _offsetsStart = buffer.limit() - 4 * (rows + 1);
+            int start = 0;
+            for (int k = 0; k <= rows; k += 1) {
+                int end = buffer.getInt(_offsetsStart + 4 * k);
+                checkBounds(start, end - start, _offsetsStart);
+                start = end;
+            }
+        }
+
+        @Override
+        String get(int k) {
+            int start = _buffer.getInt(_offsetsStart + 4 * check(k)),
+                end = _buffer.getInt(_offsetsStart + 4 * k + 4);
+            return decode(_buffer, start, end - start);
+        }
+
+        /** The encoded values. */
+        private final ByteBuffer _buffer;
+        /** Position of the offsets in _buffer. */
+        private final int _offsetsStart;
+    }
+}
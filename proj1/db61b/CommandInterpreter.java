@@ -1,6 +1,8 @@
 package db61b;
 
 import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.Reader;
 
 import java.util.ArrayList;
 import java.util.Scanner;
@@ -120,6 +122,15 @@ class CommandInterpreter {
         _database = new Database();
     }
 
+    /** A new CommandInterpreter executing commands read from INP, writing
+     *  prompts on PROMPTER, if it is non-null.  Unlike one reading from a
+     *  Scanner, it finds the tokens of the commands with a Lexer (see
+     *  Tokenizer). */
+    CommandInterpreter(Reader inp, PrintStream prompter) {
+        _input = new Tokenizer(inp, prompter);
+        _database = new Database();
+    }
+
     /** Parse and execute one statement from the token stream.  Return true
      *  iff the command is something other than quit or exit. */
     boolean statement() {
@@ -147,6 +158,15 @@ class CommandInterpreter {
         case "store":
             storeStatement();
             break;
+        case "analyze":
+            analyzeStatement();
+            break;
+        case "stats":
+            statsStatement();
+            break;
+        case "explain":
+            explainStatement();
+            break;
         default:
             throw error("unrecognizable command");
         }
@@ -156,6 +176,10 @@ class CommandInterpreter {
     /** Parse and execute a create statement from the token stream. */
     void createStatement() {
         _input.next("create");
+        if (_input.nextIs("index") || _input.nextIs("ordered")) {
+            createIndexStatement();
+            return;
+        }
         _input.next("table");
         String name = name();
         Table table = tableDefinition();
@@ -163,6 +187,21 @@ class CommandInterpreter {
         _input.next(";");
     }
 
+    /** Parse and execute the remainder of a create index statement,
+     *  starting with "index" or "ordered index", from the token stream. */
+    void createIndexStatement() {
+        boolean ordered = _input.nextIf("ordered");
+        _input.next("index");
+        String name = name();
+        _input.next("on");
+        Table table = tableName();
+        _input.next("(");
+        String column = columnName();
+        _input.next(")");
+        table.createIndex(name, column, ordered);
+        _input.next(";");
+    }
+
     /** Parse and execute an exit or quit statement. Actually does nothing
      *  except check syntax, since statement() handles the actual exiting. */
     void exitStatement() {
@@ -202,10 +241,20 @@ class CommandInterpreter {
     void loadStatement() {
         _input.next("load");
         String table = name();
-        Table loaded = Table.readTable(table);
+        Table loaded;
+        String file;
+        DBFile.awaitWrite(table);
+        if (ColumnarFile.isCurrent(table)) {
+            loaded = ColumnarFile.read(table);
+            file = table + ".dbc";
+        } else {
+            loaded = Table.readTable(table);
+            file = table + ".db";
+        }
         _database.put(table, loaded);
+        _database.analyzeLater(table);
         _input.next(";");
-        System.out.printf("Loaded %s.db%n", table);
+        System.out.printf("Loaded %s%n", file);
 
     }
 
@@ -214,10 +263,38 @@ class CommandInterpreter {
         _input.next("store");
         String name = _input.peek();
         Table table = tableName();
-        table.writeTable(name);
-        System.out.printf("Stored %s.db%n", name);
+        if (_input.nextIf("columnar")) {
+            ColumnarFile.write(table, name);
+            System.out.printf("Stored %s.dbc%n", name);
+        } else {
+            DBFile.store(table, name);
+            System.out.printf("Stored %s.db%n", name);
+        }
+        _input.next(";");
+
+    }
+
+    /** Parse and execute an analyze statement from the token stream. */
+    void analyzeStatement() {
+        _input.next("analyze");
+        String name = name();
+        _database.analyze(name);
         _input.next(";");
+        System.out.printf("Analyzed %s%n", name);
+    }
 
+    /** Parse and execute a stats statement from the token stream. */
+    void statsStatement() {
+        _input.next("stats");
+        String name = _input.peek();
+        tableName();
+        TableStats stats = _database.getStats(name);
+        if (stats == null) {
+            throw error("table %s has not been analyzed", name);
+        }
+        _input.next(";");
+        System.out.printf("Statistics of %s:%n", name);
+        stats.print();
     }
 
     /** Parse and execute a print statement from the token stream. */
@@ -230,12 +307,24 @@ class CommandInterpreter {
         _input.next(";");
     }
 
+    /** Parse and execute an explain statement from the token stream. */
+    void explainStatement() {
+        _input.next("explain");
+        boolean analyze = _input.nextIf("analyze");
+        SelectPlan plan = selectPlan(true, analyze);
+        _input.next(";");
+        System.out.println("Query plan:");
+        plan.explain(analyze);
+    }
+
     /** Parse and execute a select statement from the token stream. */
     void selectStatement() {
-        Table table = selectClause();
+        SelectPlan plan = selectPlan(false, false);
         _input.next(";");
         System.out.println("Search results:");
-        table.print();
+        PrintWriter out = standardOutput();
+        plan.print(out);
+        out.flush();
     }
 
     /** Parse and execute a table definition, returning the specified
@@ -244,11 +333,15 @@ class CommandInterpreter {
         Table table;
         if (_input.nextIf("(")) {
             ArrayList<String> columns = new ArrayList<>();
+            ArrayList<Type> types = new ArrayList<>();
             columns.add(columnName());
+            types.add(columnType());
             while (_input.nextIf(",")) {
                 columns.add(columnName());
+                types.add(columnType());
             }
-            table = new Table(columns);
+            table = new Table(columns.toArray(new String[columns.size()]),
+                              types.toArray(new Type[types.size()]), true);
             _input.nextIf(")");
         } else {
             _input.nextIf("as");
@@ -259,26 +352,43 @@ class CommandInterpreter {
     /** Parse and execute a select clause from the token stream, returning the
      *  resulting table. */
     Table selectClause() {
+        return selectPlan(false, false).execute();
+    }
+
+    /** Parse a select clause from the token stream and return its plan.
+     *  When a select from more than two tables is executed, or if
+     *  EXPLAIN and ANALYZE, the tables' statistics are fetched with
+     *  getStats, gathering any that analyzeLater has requested, to
+     *  order the joins and print the plan's estimates.  Otherwise, only
+     *  statistics already gathered are used (see
+     *  Database.recordedStats), to choose the indices each table is
+     *  scanned with and, if EXPLAIN, to plan without executing. */
+    SelectPlan selectPlan(boolean explain, boolean analyze) {
         _input.next("select");
         ArrayList<String> columns = new ArrayList<>();
         ArrayList<Condition> conditionList = new ArrayList<>();
-        Table newTable;
         columns.add(columnName());
         while (_input.nextIf(",")) {
             columns.add(columnName());
         }
         _input.next("from");
-        Table table = tableName();
-        if (!_input.nextIf(",")) {
-            conditionList = conditionClause(table);
-            newTable = table.select(columns, conditionList);
-        } else {
-            Table different = tableName();
-            conditionList = conditionClause(table, different);
-            newTable = table.select2(different, columns, conditionList);
+        ArrayList<String> names = new ArrayList<>();
+        ArrayList<Table> tables = new ArrayList<>();
+        do {
+            names.add(_input.peek());
+            tables.add(tableName());
+        } while (_input.nextIf(","));
+        conditionList =
+            conditionClause(tables.toArray(new Table[tables.size()]));
+        ArrayList<TableStats> stats = new ArrayList<>();
+        for (String name : names) {
+            if (tables.size() > 2 && !explain || analyze) {
+                stats.add(_database.getStats(name));
+            } else {
+                stats.add(_database.recordedStats(name));
+            }
         }
-        return newTable;
-
+        return new SelectPlan(names, tables, stats, columns, conditionList);
     }
 
     /** Parse and return a valid name (identifier) from the token stream. */
@@ -293,6 +403,15 @@ class CommandInterpreter {
         return name();
     }
 
+    /** Parse an optional column type from the token stream, returning
+     *  the Type it names, or STRING if there is none. */
+    Type columnType() {
+        if (_input.nextIs(Tokenizer.IDENTIFIER)) {
+            return Type.forName(name());
+        }
+        return Type.STRING;
+    }
+
     /** Parse a valid table name from the token stream, and return the Table
      *  that it designates, which must be loaded. */
     Table tableName() {
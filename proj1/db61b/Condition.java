@@ -1,5 +1,6 @@
 package db61b;
 
+import java.util.BitSet;
 import java.util.List;
 
 /** Represents a single 'where' condition in a 'select' command.
@@ -14,7 +15,7 @@ class Condition {
     Condition(Column col1, String relation, Column col2) {
         _col1 = col1;
         _col2 = col2;
-        _relation = relation;
+        _relation = Relation.forSymbol(relation);
 
     }
 
@@ -27,57 +28,146 @@ class Condition {
         this(col1, relation, (Column) null);
         _val2 = val2;
     }
-    /** Returns true or false based on the COLUMNNAMES. **/
-    boolean check(List<String> columnNames) {
-        _col1.getName();
-        for (int i = 0; i < columnNames.size(); i++) {
-            if (_col1.getName().equals(columnNames.get(i))) {
-                return true;
+    /** Return my first operand. */
+    Column getColumn1() {
+        return _col1;
+    }
+
+    /** Return my second operand, or null if it is a literal. */
+    Column getColumn2() {
+        return _col2;
+    }
+
+    /** Return my second operand if it is a literal, and otherwise null. */
+    String getLiteral() {
+        return _val2;
+    }
+
+    /** Return my relation. */
+    Relation getRelation() {
+        return _relation;
+    }
+
+    /** Return true iff all my columns select from the Kth of the tables
+     *  from which they were created to select, so that I may be tested
+     *  on rows of that table alone. */
+    boolean selectsFrom(int k) {
+        return _col1.getTableIndex() == k
+            && (_col2 == null || _col2.getTableIndex() == k);
+    }
+
+    /** Assuming that ROW1 and ROW2 are the stored positions of rows in
+     *  the first and second of the tables from which my columns are
+     *  selected (see Column.rowFrom), returns the result of performing
+     *  the test I denote. */
+    boolean test(int row1, int row2) {
+        return compiled().test(_col1.rowFrom(row1, row2),
+                               _col2 == null ? 0 : _col2.rowFrom(row1, row2));
+    }
+
+    /** Assuming that ROWS[k] is the stored position of a row in the kth
+     *  of the tables from which my columns are selected, returns the
+     *  result of performing the test I denote. */
+    boolean test(int[] rows) {
+        return compiled().test(_col1.rowFrom(rows),
+                               _col2 == null ? 0 : _col2.rowFrom(rows));
+    }
+
+    /** Assuming that my columns are selected from a single table, return
+     *  the result of performing the test I denote on the row stored at
+     *  position ROW of that table. */
+    boolean test(int row) {
+        return test(row, row);
+    }
+
+    /** Assuming that my columns are selected from a single table, clear
+     *  each bit of ROWS whose index is the stored position of a row of
+     *  that table that does not satisfy me.  If I compare with a literal
+     *  in the order of my column's values, whole blocks of rows that
+     *  the column's zone map shows cannot satisfy me are cleared without
+     *  examining their rows. */
+    void filter(BitSet rows) {
+        filter(rows, 0);
+    }
+
+    /** As for filter(ROWS), but where bit i of ROWS stands for the row
+     *  stored at position OFFSET + i. */
+    void filter(BitSet rows, int offset) {
+        Test test = compiled();
+        ZoneMap zones = _order == null ? null
+            : _col1.getTable().zoneMap(_col1.getColumn());
+        int i = rows.nextSetBit(0);
+        while (i >= 0) {
+            int block = (offset + i) >>> ZoneMap.BLOCK_BITS;
+            int end = zones == null ? Integer.MAX_VALUE
+                : ((block + 1) << ZoneMap.BLOCK_BITS) - offset;
+            if (zones != null
+                && !_relation.mayHold(_order.compare(zones.minRow(block)),
+                                      _order.compare(zones.maxRow(block)))) {
+                rows.clear(i, end);
+                i = rows.nextSetBit(end);
+            } else {
+                while (i >= 0 && i < end) {
+                    if (!test.test(offset + i, offset + i)) {
+                        rows.clear(i);
+                    }
+                    i = rows.nextSetBit(i + 1);
+                }
             }
         }
-        return false;
-    }
-
-    /** Assuming that ROWS are row indices in the respective tables
-     *  from which my columns are selected, returns the result of
-     *  performing the test I denote. */
-    boolean test(Integer... rows) {
-        int resultcol2 = 0;
-        int resultval2 = 0;
-        if (_col2 != null) {
-            resultcol2 = _col1.getFrom(rows).compareTo(_col2.getFrom(rows));
-            if (_relation.equals("=")) {
-                return resultcol2 == 0;
-            } else if (_relation.equals(">")) {
-                return resultcol2 > 0;
-            } else if (_relation.equals(">=")) {
-                return resultcol2 >= 0;
-            } else if (_relation.equals("<")) {
-                return resultcol2 < 0;
-            } else if (_relation.equals("<=")) {
-                return resultcol2 <= 0;
-            } else {
-                return resultcol2 != 0;
+    }
+
+    /** Assuming that my columns are selected from a single table, return
+     *  the fraction of the blocks of that table's rows that my first
+     *  column's zone map shows may contain rows satisfying me, or 1 if I
+     *  do not compare with a literal in the order of that column's
+     *  values (see filter) or that zone map has not yet been computed.
+     *  No rows are examined other than those that hold the smallest and
+     *  largest values of each block. */
+    double zoneFraction() {
+        compiled();
+        if (_order == null) {
+            return 1;
+        }
+        ZoneMap zones = _col1.getTable().builtZoneMap(_col1.getColumn());
+        if (zones == null || zones.blocks() == 0) {
+            return 1;
+        }
+        int possible = 0;
+        for (int b = 0; b < zones.blocks(); b += 1) {
+            if (_relation.mayHold(_order.compare(zones.minRow(b)),
+                                  _order.compare(zones.maxRow(b)))) {
+                possible += 1;
             }
-        } else {
-            resultval2 = _col1.getFrom(rows).compareTo(_val2);
-            if (_relation.equals("=")) {
-                return resultval2 == 0;
-            } else if (_relation.equals(">")) {
-                return resultval2 > 0;
-            } else if (_relation.equals(">=")) {
-                return resultval2 >= 0;
-            } else if (_relation.equals("<")) {
-                return resultval2 < 0;
-            } else if (_relation.equals("<=")) {
-                return resultval2 <= 0;
-            } else {
-                return resultval2 != 0;
+        }
+        return (double) possible / zones.blocks();
+    }
+
+    /** Compile my test for the current values of my columns, and have
+     *  my table compute any zone map that filter uses, if that has not
+     *  already been done.  Once this is done, testing me does not change
+     *  me or my table, so that I may be tested by several threads at
+     *  once while my columns are unchanged. */
+    void compile() {
+        compiled();
+        if (_order != null) {
+            _col1.getTable().zoneMap(_col1.getColumn());
+        }
+    }
+
+    /** Return true iff ROW1 and ROW2 satisfy all CONDITIONS. */
+    static boolean test(List<Condition> conditions, int row1, int row2) {
+        for (Condition cond : conditions) {
+            if (!cond.test(row1, row2)) {
+                return false;
             }
         }
+        return true;
     }
-    /** Return true iff ROWS satisfies all CONDITIONS. */
-    static boolean test(List<Condition> conditions, Integer... rows) {
+
+    /** Return true iff the rows stored at ROWS (as for test(int[]))
+     *  satisfy all CONDITIONS. */
+    static boolean test(List<Condition> conditions, int[] rows) {
         for (Condition cond : conditions) {
             if (!cond.test(rows)) {
                 return false;
@@ -86,12 +176,121 @@ class Condition {
         return true;
     }
 
+    /** Return me as written in a where clause. */
+    @Override
+    public String toString() {
+        return String.format("%s %s %s", _col1.getName(),
+                             _relation.getSymbol(),
+                             _col2 == null ? "'" + _val2 + "'"
+                             : _col2.getName());
+    }
+
+    /** Return true iff ROW satisfies all CONDITIONS, which apply to a
+     *  single table. */
+    static boolean test(List<Condition> conditions, int row) {
+        return test(conditions, row, row);
+    }
+
+    /** The test I denote, specialized to particular values of my
+     *  operands. */
+    private interface Test {
+        /** Return true iff my relation holds between the value of my
+         *  first operand in the row stored at K1 of its table and my
+         *  second operand, which is either a literal or the value of a
+         *  column in the row stored at K2 of its table. */
+        boolean test(int k1, int k2);
+    }
+
+    /** Compares the value of my first operand in the row stored at a
+     *  given position of its table with my literal. */
+    private interface Order {
+        /** Return <0, 0, or >0 depending on whether the value of my
+         *  first operand in the row stored at K is less than, equal to,
+         *  or greater than my literal. */
+        int compare(int k);
+    }
+
+    /** Return my test, specialized to the current values of my columns,
+     *  and set _order to match.  They are compiled again only if those
+     *  values have been replaced since they were last compiled. */
+    private Test compiled() {
+        ValueList values1 = _col1.getValues(),
+            values2 = _col2 == null ? null : _col2.getValues();
+        if (_test == null || values1 != _values1 || values2 != _values2) {
+            _values1 = values1;
+            _values2 = values2;
+            _test = compile(values1, values2);
+            _order = order(values1);
+        }
+        return _test;
+    }
+
+    /** Return an Order comparing my literal with VALUES1, the values of
+     *  my first column, in the same way that those values are ordered
+     *  among themselves, or null if I do not compare with a literal or
+     *  my test does not compare that way. */
+    private Order order(ValueList values1) {
+        String literal = _val2;
+        if (literal == null) {
+            return null;
+        } else if (!values1.getType().isNumeric()) {
+            return k -> values1.get(k).compareTo(literal);
+        } else if (Type.LONG.accepts(literal)) {
+            long number = Long.parseLong(literal);
+            return k -> Long.compare(values1.longAt(k), number);
+        }
+        return null;
+    }
+
+    /** Return my test, specialized to VALUES1, the values of my first
+     *  column, and VALUES2, those of my second (null if I compare with a
+     *  literal).  Numeric values are compared as numbers, and equality
+     *  with a literal compares codes if VALUES1 is dictionary-coded. */
+    private Test compile(ValueList values1, ValueList values2) {
+        Relation relation = _relation;
+        boolean numeric1 = values1.getType().isNumeric();
+        if (values2 != null) {
+            if (numeric1 && values2.getType().isNumeric()) {
+                return (k1, k2) ->
+                    relation.holds(Long.compare(values1.longAt(k1),
+                                                values2.longAt(k2)));
+            }
+            return (k1, k2) ->
+                relation.holds(values1.get(k1).compareTo(values2.get(k2)));
+        }
+        String literal = _val2;
+        if (numeric1 && Type.LONG.accepts(literal)) {
+            long number = Long.parseLong(literal);
+            return (k1, k2) ->
+                relation.holds(Long.compare(values1.longAt(k1), number));
+        }
+        if (relation != Relation.EQ && relation != Relation.NE) {
+            return (k1, k2) ->
+                relation.holds(values1.get(k1).compareTo(literal));
+        }
+        boolean equal = relation == Relation.EQ;
+        int code = values1.encode(literal);
+        if (numeric1 || code == ValueList.ABSENT) {
+            return (k1, k2) -> !equal;
+        } else if (code != ValueList.NOT_CODED) {
+            return (k1, k2) -> (values1.codeAt(k1) == code) == equal;
+        }
+        return (k1, k2) -> values1.get(k1).equals(literal) == equal;
+    }
+
     /** The operands of this condition.  _col2 is null if the second operand
      *  is a literal. */
     private Column _col1, _col2;
     /** Second operand, if literal (otherwise null). */
     private String _val2;
 
-    /** Third operand. **/
-    private String _relation;
+    /** Relation between my operands. **/
+    private Relation _relation;
+
+    /** The values of _col1 and _col2 for which _test was compiled. */
+    private ValueList _values1, _values2;
+    /** My compiled test, or null if not yet compiled. */
+    private Test _test;
+    /** The Order for my literal compiled along with _test, if any. */
+    private Order _order;
 }
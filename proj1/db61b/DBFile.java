@@ -0,0 +1,491 @@
+package db61b;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+
+import static db61b.Utils.error;
+
+/** Reading and writing Tables in the text format stored in files named
+ *  NAME.db: a header line of comma-separated column titles, followed by
+ *  one line of comma-separated values per row, in lexicographic order.
+ *
+ *  Large files are divided into chunks of about CHUNK_SIZE bytes, each
+ *  ending just after a newline, and the chunks are parsed concurrently
+ *  on the common fork/join pool.  Their rows are then added to a
+ *  TableBuilder in file order, so that the result, including any error
+ *  reported for a malformed line, is the same as reading the file one
+ *  line at a time.
+ *
+ *  Tables are written by encoding them into a large buffer that is
+ *  written directly to a temporary file, which then replaces NAME.db,
+ *  so that an unsuccessful write leaves the old file intact.  If
+ *  BACKGROUND, store writes a snapshot of the table on another thread.
+ *  @author Bo Bi
+ */
+class DBFile {
+
+    /** Nominal number of bytes in each chunk parsed by a single task,
+     *  which may be changed by setting the system property
+     *  db61b.chunkSize (for example, to a few bytes, so that even small
+     *  files are divided into many chunks). */
+    static final int CHUNK_SIZE =
+        Math.max(1, Integer.getInteger("db61b.chunkSize", 1 << 22));
+
+    /** True iff store writes tables in the background, which is
+     *  requested by setting the system property db61b.backgroundStore
+     *  to "true". */
+    static final boolean BACKGROUND =
+        Boolean.getBoolean("db61b.backgroundStore");
+
+    /** Read the contents of the file NAME.db, and return as a Table.
+     *  Format errors in the .db file cause a DBException. */
+    static Table read(String name) {
+        try (FileInputStream stream = new FileInputStream(name + ".db")) {
+            FileChannel channel = stream.getChannel();
+            long size = channel.size();
+            long[] start = new long[1];
+            String header = readHeader(channel, start);
+            if (header == null) {
+                throw error("missing header in DB file");
+            }
+            TableBuilder builder = new TableBuilder(header.split(","));
+
+            ArrayList<ForkJoinTask<ArrayList<String[]>>> tasks =
+                new ArrayList<>();
+            for (long p = start[0]; p < size; ) {
+                long end = lineBoundary(channel, p + CHUNK_SIZE, size);
+                ByteBuffer chunk =
+                    channel.map(FileChannel.MapMode.READ_ONLY, p, end - p);
+                if (p == start[0] && end == size) {
+                    addAll(builder, parse(chunk));
+                } else {
+                    tasks.add(ForkJoinPool.commonPool()
+                              .submit(() -> parse(chunk)));
+                }
+                p = end;
+            }
+            for (ForkJoinTask<ArrayList<String[]>> task : tasks) {
+                addAll(builder, task.join());
+            }
+            return builder.build();
+        } catch (FileNotFoundException e) {
+            throw error("could not find %s.db", name);
+        } catch (IOException | IllegalArgumentException e) {
+            throw error("problem reading from %s.db", name);
+        }
+    }
+
+    /** Return the first line of CHANNEL, without its terminator, or null
+     *  if CHANNEL is empty.  Set START[0] to the position of the
+     *  following line. */
+    private static String readHeader(FileChannel channel, long[] start)
+        throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        long p = 0;
+        boolean sawReturn = false;
+        while (channel.read(buffer, p) > 0) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                byte b = buffer.get();
+                if (sawReturn) {
+                    start[0] = b == '\n' ? p + 1 : p;
+                    return header.toString(CHARSET.name());
+                } else if (b == '\r') {
+                    sawReturn = true;
+                } else if (b == '\n') {
+                    start[0] = p + 1;
+                    return header.toString(CHARSET.name());
+                } else {
+                    header.write(b);
+                }
+                p += 1;
+            }
+            buffer.clear();
+        }
+        start[0] = p;
+        return p == 0 ? null : header.toString(CHARSET.name());
+    }
+
+    /** Return the position just after the first newline in CHANNEL at or
+     *  after position P, or SIZE, the size of CHANNEL, if there is none
+     *  or P >= SIZE. */
+    private static long lineBoundary(FileChannel channel, long p, long size)
+        throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        while (p < size && channel.read(buffer, p) > 0) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                p += 1;
+                if (buffer.get() == '\n') {
+                    return p;
+                }
+            }
+            buffer.clear();
+        }
+        return size;
+    }
+
+    /** Return the rows in CHUNK, which consists of whole lines, each
+     *  split at commas into its values. */
+    private static ArrayList<String[]> parse(ByteBuffer chunk) {
+        return new ChunkParser(chunk).parse();
+    }
+
+    /** Add ROWS to BUILDER, in order. */
+    private static void addAll(TableBuilder builder, ArrayList<String[]> rows) {
+        for (String[] row : rows) {
+            builder.add(row);
+        }
+    }
+
+    /** Write TABLE into the file NAME.db, as for write.  If BACKGROUND,
+     *  instead return at once, leaving a snapshot of the current contents
+     *  of TABLE to be written on another thread; awaitWrite(NAME) waits
+     *  for it to finish. */
+    static void store(Table table, String name) {
+        if (!BACKGROUND) {
+            write(table, name);
+            return;
+        }
+        Table snapshot = table.snapshot();
+        PENDING.put(name, WRITER.submit(() -> write(snapshot, name)));
+    }
+
+    /** Wait for the most recent background write of NAME.db begun by
+     *  store, if any, to finish.  If it failed, throw a DBException
+     *  describing the failure. */
+    static void awaitWrite(String name) {
+        Future<?> pending = PENDING.remove(name);
+        if (pending == null) {
+            return;
+        }
+        try {
+            pending.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof DBException) {
+                throw (DBException) e.getCause();
+            }
+            throw error("trouble writing to %s.db", name);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw error("trouble writing to %s.db", name);
+        }
+    }
+
+    /** Wait for all background writes begun by store to finish, and
+     *  return DBExceptions describing any that failed. */
+    static List<DBException> awaitWrites() {
+        ArrayList<DBException> errors = new ArrayList<>();
+        for (String name : new ArrayList<>(PENDING.keySet())) {
+            try {
+                awaitWrite(name);
+            } catch (DBException e) {
+                errors.add(e);
+            }
+        }
+        return errors;
+    }
+
+    /** Write the contents of TABLE into the file NAME.db.  Any I/O
+     *  errors cause a DBException. */
+    static void write(Table table, String name) {
+        File target = new File(name + ".db"),
+            temp = new File(name + ".db.tmp");
+        try (FileOutputStream stream = new FileOutputStream(temp)) {
+            RowWriter output = new RowWriter(stream.getChannel());
+            for (int j = 0; j < table.columns(); j += 1) {
+                if (j > 0) {
+                    output.put((byte) ',');
+                }
+                output.put(table.getTitle(j));
+            }
+            output.endLine();
+            ValueList[] columns = new ValueList[table.columns()];
+            boolean[] numeric = new boolean[columns.length];
+            for (int j = 0; j < columns.length; j += 1) {
+                columns[j] = table.values(j);
+                numeric[j] = columns[j].getType().isNumeric();
+            }
+            for (int i = 0; i < table.size(); i += 1) {
+                int k = table.storedRow(i);
+                for (int j = 0; j < columns.length; j += 1) {
+                    if (j > 0) {
+                        output.put((byte) ',');
+                    }
+                    if (numeric[j]) {
+                        output.put(columns[j].longAt(k));
+                    } else {
+                        output.put(columns[j].get(k));
+                    }
+                }
+                output.endLine();
+            }
+            output.flush();
+        } catch (IOException e) {
+            temp.delete();
+            throw error("trouble writing to %s.db", name);
+        }
+        try {
+            Files.move(temp.toPath(), target.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            temp.delete();
+            throw error("trouble writing to %s.db", name);
+        }
+    }
+
+    /** Encodes the text of a .db file into a buffer that is written to a
+     *  FileChannel whenever it fills. */
+    private static class RowWriter {
+
+        /** A writer to CHANNEL. */
+        RowWriter(FileChannel channel) {
+            _channel = channel;
+        }
+
+        /** Append B. */
+        void put(byte b) throws IOException {
+            if (!_buffer.hasRemaining()) {
+                flush();
+            }
+            _buffer.put(b);
+        }
+
+        /** Append VALUE, encoded in the character set of .db files. */
+        void put(String value) throws IOException {
+            int n = value.length();
+            if (n > _buffer.remaining()) {
+                flush();
+            }
+            if (n > _buffer.remaining() || !isAscii(value)) {
+                put(value.getBytes(CHARSET));
+                return;
+            }
+            for (int i = 0; i < n; i += 1) {
+                _buffer.put((byte) value.charAt(i));
+            }
+        }
+
+        /** Append the decimal representation of VALUE. */
+        void put(long value) throws IOException {
+            if (value == Long.MIN_VALUE) {
+                put(Long.toString(value));
+                return;
+            }
+            if (_buffer.remaining() < _digits.length + 1) {
+                flush();
+            }
+            if (value < 0) {
+                _buffer.put((byte) '-');
+                value = -value;
+            }
+            int p = _digits.length;
+            do {
+                p -= 1;
+                _digits[p] = (byte) ('0' + value % 10);
+                value /= 10;
+            } while (value != 0);
+            _buffer.put(_digits, p, _digits.length - p);
+        }
+
+        /** Append BYTES. */
+        void put(byte[] bytes) throws IOException {
+            if (bytes.length > _buffer.remaining()) {
+                flush();
+            }
+            if (bytes.length > _buffer.remaining()) {
+                write(ByteBuffer.wrap(bytes));
+            } else {
+                _buffer.put(bytes);
+            }
+        }
+
+        /** Append a line separator. */
+        void endLine() throws IOException {
+            put(LINE_SEPARATOR);
+        }
+
+        /** Write everything appended so far to my channel. */
+        void flush() throws IOException {
+            _buffer.flip();
+            write(_buffer);
+            _buffer.clear();
+        }
+
+        /** Write all of DATA to my channel. */
+        private void write(ByteBuffer data) throws IOException {
+            while (data.hasRemaining()) {
+                _channel.write(data);
+            }
+        }
+
+        /** Return true iff VALUE consists of ASCII characters only. */
+        private static boolean isAscii(String value) {
+            for (int i = 0; i < value.length(); i += 1) {
+                if (value.charAt(i) >= 0x80) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** The channel written to. */
+        private final FileChannel _channel;
+        /** Holds bytes appended but not yet written. */
+        private final ByteBuffer _buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        /** Holds the digits of a number being appended. */
+        private final byte[] _digits = new byte[19];
+    }
+
+    /** Splits the lines of a chunk of a .db file into rows of values
+     *  by scanning its bytes in place, with the same results as
+     *  decoding each line and then splitting it with String.split(",").
+     *  Each value is decoded directly from the chunk, and short values
+     *  that repeat are decoded only once. */
+    private static class ChunkParser {
+
+        /** A parser for the whole lines in CHUNK. */
+        ChunkParser(ByteBuffer chunk) {
+            _chunk = chunk;
+        }
+
+        /** Return the rows in my chunk. */
+        ArrayList<String[]> parse() {
+            ArrayList<String[]> rows = new ArrayList<>();
+            int end = _chunk.limit();
+            int start = _chunk.position();
+            for (int p = start; p < end; p += 1) {
+                byte b = _chunk.get(p);
+                if (b == ',') {
+                    _fields.add(value(start, p));
+                    start = p + 1;
+                } else if (b == '\n' || b == '\r') {
+                    rows.add(row(start, p));
+                    if (b == '\r' && p + 1 < end && _chunk.get(p + 1) == '\n') {
+                        p += 1;
+                    }
+                    start = p + 1;
+                }
+            }
+            if (start < end || !_fields.isEmpty()) {
+                rows.add(row(start, end));
+            }
+            return rows;
+        }
+
+        /** Return the row whose last value occupies bytes START to END of
+         *  my chunk, and whose preceding values are in _fields, which is
+         *  then cleared.  As for String.split, trailing empty values are
+         *  dropped, unless the line contains no commas. */
+        private String[] row(int start, int end) {
+            String last = value(start, end);
+            if (_fields.isEmpty()) {
+                return new String[] { last };
+            }
+            _fields.add(last);
+            int n = _fields.size();
+            while (n > 0 && _fields.get(n - 1).isEmpty()) {
+                n -= 1;
+            }
+            String[] row = _fields.subList(0, n).toArray(new String[n]);
+            _fields.clear();
+            return row;
+        }
+
+        /** Return the value in bytes START to END of my chunk. */
+        private String value(int start, int end) {
+            int len = end - start;
+            if (len == 0) {
+                return "";
+            }
+            if (len > _scratch.length) {
+                _scratch = new byte[Math.max(len, 2 * _scratch.length)];
+            }
+            int hash = 0;
+            for (int i = 0; i < len; i += 1) {
+                byte b = _chunk.get(start + i);
+                _scratch[i] = b;
+                hash = 31 * hash + b;
+            }
+            if (len > MAX_CACHED_LENGTH) {
+                return new String(_scratch, 0, len, CHARSET);
+            }
+            int slot = (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+            byte[] cached = _cachedBytes[slot];
+            if (cached != null
+                && Arrays.equals(cached, 0, cached.length, _scratch, 0, len)) {
+                return _cachedValues[slot];
+            }
+            String value = new String(_scratch, 0, len, CHARSET);
+            _cachedBytes[slot] = Arrays.copyOf(_scratch, len);
+            _cachedValues[slot] = value;
+            return value;
+        }
+
+        /** Number of slots in the cache of decoded values. */
+        private static final int CACHE_SIZE = 1 << 10;
+        /** Length in bytes of the longest values that are cached. */
+        private static final int MAX_CACHED_LENGTH = 32;
+
+        /** The chunk being parsed. */
+        private final ByteBuffer _chunk;
+        /** The values found so far in the current line. */
+        private final ArrayList<String> _fields = new ArrayList<>();
+        /** Holds the bytes of the value being decoded. */
+        private byte[] _scratch = new byte[64];
+        /** The bytes of recently decoded short values, and the values
+         *  themselves, each in the slot given by the hash of its
+         *  bytes. */
+        private final byte[][] _cachedBytes = new byte[CACHE_SIZE][];
+        /** See _cachedBytes. */
+        private final String[] _cachedValues = new String[CACHE_SIZE];
+    }
+
+    /** Character set of .db files. */
+    private static final Charset CHARSET = Charset.defaultCharset();
+
+    /** The line separator written after each line. */
+    private static final byte[] LINE_SEPARATOR =
+        System.lineSeparator().getBytes(CHARSET);
+
+    /** Size of the buffers used to find line boundaries. */
+    private static final int SCAN_BUFFER_SIZE = 1 << 12;
+
+    /** Size of the buffer used to write tables. */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /** Runs the background writes begun by store, one at a time in the
+     *  order they were begun. */
+    private static final ExecutorService WRITER =
+        Executors.newSingleThreadExecutor(task -> {
+                Thread thread = new Thread(task, "db61b store");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /** Maps the name of each table with a background write begun by
+     *  store and not yet awaited to the most recent such write. */
+    private static final HashMap<String, Future<?>> PENDING =
+        new HashMap<>();
+}
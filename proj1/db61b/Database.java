@@ -1,6 +1,9 @@
 package db61b;
 
 import java.util.HashMap;
+import java.util.HashSet;
+
+import static db61b.Utils.error;
 
 /** A collection of Tables, indexed by name.
  *  @author Bo Bi*/
@@ -9,9 +12,18 @@ class Database {
     /** An empty database. */
     private HashMap<String, Table> _table;
 
+    /** The statistics gathered for each table by analyze, by name. */
+    private HashMap<String, TableStats> _stats;
+
+    /** The names of the tables to be analyzed when their statistics are
+     *  first requested. */
+    private HashSet<String> _toAnalyze;
+
     /** Builds HashMap.**/
     public Database() {
         _table = new HashMap<>();
+        _stats = new HashMap<>();
+        _toAnalyze = new HashSet<>();
     }
 
     /** Return the Table whose name is NAME stored in this database, or null
@@ -31,6 +43,46 @@ class Database {
             throw new IllegalArgumentException("null argument");
         }
         _table.put(name, table);
+        _stats.remove(name);
+        _toAnalyze.remove(name);
+    }
+
+    /** Gather and record statistics of the current contents of the table
+     *  named NAME, replacing any recorded before, and return them. */
+    public TableStats analyze(String name) {
+        Table table = get(name);
+        if (table == null) {
+            throw error("unknown table: %s", name);
+        }
+        TableStats stats = new TableStats(table);
+        _stats.put(name, stats);
+        _toAnalyze.remove(name);
+        return stats;
+    }
+
+    /** Arrange for the table named NAME to be analyzed when its
+     *  statistics are first requested by getStats, so that the cost of
+     *  gathering them is paid only if they are used. */
+    public void analyzeLater(String name) {
+        _toAnalyze.add(name);
+    }
+
+    /** Return the statistics last recorded for the table named NAME by
+     *  analyze, first gathering them if analyzeLater has requested it,
+     *  or null if there are none.  Replacing the table with put discards
+     *  them. */
+    public TableStats getStats(String name) {
+        if (_toAnalyze.contains(name)) {
+            analyze(name);
+        }
+        return _stats.get(name);
+    }
+
+    /** Return the statistics last recorded for the table named NAME by
+     *  analyze, or null if there are none, without gathering any that
+     *  analyzeLater has requested. */
+    public TableStats recordedStats(String name) {
+        return _stats.get(name);
     }
 
 }
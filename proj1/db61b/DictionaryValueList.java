@@ -0,0 +1,119 @@
+package db61b;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/** A ValueList that stores each distinct value once, in a dictionary,
+ *  and each entry as the integer code of its value in that dictionary.
+ *  This is much more compact than a StringValueList for columns with
+ *  few distinct values, and lets equal values be recognized by
+ *  comparing codes.  When a column turns out to have many distinct
+ *  values, adapt replaces the list with a StringValueList.
+ *  @author Bo Bi
+ */
+class DictionaryValueList extends ValueList {
+
+    /** Number of distinct values beyond which I am replaced by a
+     *  StringValueList, provided that they also make up more than half
+     *  of my entries. */
+    static final int MAX_DICTIONARY_SIZE = 1 << 16;
+
+    /** An empty list. */
+    DictionaryValueList() {
+        _codes = new int[INITIAL_CAPACITY];
+        _size = 0;
+    }
+
+    /** A copy of the first SIZE entries of VALUES, sharing its array of
+     *  codes. */
+    private DictionaryValueList(DictionaryValueList values, int size) {
+        _dictionary.addAll(values._dictionary);
+        _encoding.putAll(values._encoding);
+        _codes = values._codes;
+        _size = size;
+    }
+
+    @Override
+    int size() {
+        return _size;
+    }
+
+    @Override
+    String get(int k) {
+        if (k >= _size) {
+            throw new IndexOutOfBoundsException();
+        }
+        return _dictionary.get(_codes[k]);
+    }
+
+    @Override
+    void add(String value) {
+        Integer code = _encoding.get(value);
+        if (code == null) {
+            code = _dictionary.size();
+            _dictionary.add(value);
+            _encoding.put(value, code);
+        }
+        if (_size == _codes.length) {
+            _codes = Arrays.copyOf(_codes, 2 * _size);
+        }
+        _codes[_size] = code;
+        _size += 1;
+    }
+
+    @Override
+    int compare(int k0, int k1) {
+        int c0 = _codes[k0], c1 = _codes[k1];
+        if (c0 == c1) {
+            return 0;
+        }
+        return _dictionary.get(c0).compareTo(_dictionary.get(c1));
+    }
+
+    @Override
+    boolean matches(int k, String value) {
+        Integer code = _encoding.get(value);
+        return code != null && code == _codes[k];
+    }
+
+    @Override
+    int encode(String value) {
+        Integer code = _encoding.get(value);
+        return code == null ? ABSENT : code;
+    }
+
+    @Override
+    int codeAt(int k) {
+        return _codes[k];
+    }
+
+    /** Copies my dictionary but shares my array of codes, since
+     *  additions to me only change codes past my current size, or
+     *  replace the array. */
+    @Override
+    ValueList snapshot() {
+        return new DictionaryValueList(this, _size);
+    }
+
+    @Override
+    ValueList adapt() {
+        int distinct = _dictionary.size();
+        if (distinct > MAX_DICTIONARY_SIZE && 2 * distinct > _size) {
+            return new StringValueList(this);
+        }
+        return this;
+    }
+
+    /** Initial length of _codes. */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** The distinct values, indexed by code. */
+    private final ArrayList<String> _dictionary = new ArrayList<>();
+    /** Maps each distinct value to its code. */
+    private final HashMap<String, Integer> _encoding = new HashMap<>();
+    /** The code of each entry; only the first _size are in use. */
+    private int[] _codes;
+    /** My number of entries. */
+    private int _size;
+}
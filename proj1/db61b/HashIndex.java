@@ -0,0 +1,53 @@
+package db61b;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/** An Index that hashes each value of its column to the rows having
+ *  that value, and so answers equality tests only.
+ *  @author Bo Bi
+ */
+class HashIndex extends Index {
+
+    /** A hash index named NAME on column number COLUMN of TABLE. */
+    HashIndex(String name, Table table, int column) {
+        super(name, table, column);
+    }
+
+    @Override
+    void clear() {
+        _rows.clear();
+    }
+
+    @Override
+    void add(int k) {
+        String value = getTable().value(k, getColumn());
+        ArrayList<Integer> rows = _rows.get(value);
+        if (rows == null) {
+            rows = new ArrayList<>(1);
+            _rows.put(value, rows);
+        }
+        rows.add(k);
+    }
+
+    @Override
+    boolean answers(Relation relation, String value) {
+        return relation == Relation.EQ;
+    }
+
+    @Override
+    List<Integer> find(Relation relation, String value) {
+        if (!answers(relation, value)) {
+            return null;
+        }
+        List<Integer> rows = _rows.get(value);
+        return rows == null ? Collections.<Integer>emptyList() : rows;
+    }
+
+    /** Maps each value in my column to the stored positions of the rows
+     *  containing it, in increasing order. */
+    private final HashMap<String, ArrayList<Integer>> _rows =
+        new HashMap<>();
+}
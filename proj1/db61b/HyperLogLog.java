@@ -0,0 +1,73 @@
+package db61b;
+
+/** A HyperLogLog sketch, which estimates the number of distinct values
+ *  added to it in a fixed amount of space.  Each value's 64-bit hash is
+ *  divided into a register number (its top BITS bits) and a remainder;
+ *  each register keeps the largest position of the leading one bit in
+ *  the remainders sent to it, and the estimate is derived from the
+ *  harmonic mean of 2 to the power of those positions.  With 2**12
+ *  registers, the estimate is typically within about 2% of the actual
+ *  count.
+ *  @author Bo Bi
+ */
+class HyperLogLog {
+
+    /** Log base 2 of the number of registers. */
+    static final int BITS = 12;
+
+    /** An empty sketch. */
+    HyperLogLog() {
+        _registers = new byte[1 << BITS];
+    }
+
+    /** Add a value whose hash is HASH, which should be well mixed in all
+     *  its bits (see hash). */
+    void add(long hash) {
+        int register = (int) (hash >>> (64 - BITS));
+        int rank = Long.numberOfLeadingZeros(hash << BITS) + 1;
+        if (rank > 64 - BITS) {
+            rank = 64 - BITS + 1;
+        }
+        if (rank > _registers[register]) {
+            _registers[register] = (byte) rank;
+        }
+    }
+
+    /** Return the estimated number of distinct values added to me. */
+    double estimate() {
+        int m = _registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte rank : _registers) {
+            sum += Math.scalb(1.0, -rank);
+            if (rank == 0) {
+                zeros += 1;
+            }
+        }
+        double alpha = 0.7213 / (1 + 1.079 / m);
+        double estimate = alpha * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return estimate;
+    }
+
+    /** Return a well-mixed 64-bit hash of X, suitable for add. */
+    static long hash(long x) {
+        x ^= x >>> 33;
+        x *= 0xff51afd7ed558ccdL;
+        x ^= x >>> 33;
+        x *= 0xc4ceb9fe1a85ec53L;
+        x ^= x >>> 33;
+        return x;
+    }
+
+    /** Return a well-mixed 64-bit hash of VALUE, suitable for add. */
+    static long hash(String value) {
+        return hash((long) value.hashCode());
+    }
+
+    /** For each register, the largest rank of any hash sent to it, or 0
+     *  if there is none. */
+    private final byte[] _registers;
+}
@@ -0,0 +1,92 @@
+package db61b;
+
+import java.util.List;
+
+/** A secondary index on one column of a Table, which finds the rows
+ *  whose value in that column bears a given relation to a literal
+ *  without examining every row.  A Table keeps each of its indices
+ *  current as rows are added.
+ *  @author Bo Bi
+ */
+abstract class Index {
+
+    /** An index named NAME on column number COLUMN of TABLE.  It is
+     *  initially empty; the rows of TABLE are added by TABLE. */
+    Index(String name, Table table, int column) {
+        _name = name;
+        _table = table;
+        _column = column;
+    }
+
+    /** Return my name. */
+    String getName() {
+        return _name;
+    }
+
+    /** Return the table I index. */
+    Table getTable() {
+        return _table;
+    }
+
+    /** Return the number of the column I index. */
+    int getColumn() {
+        return _column;
+    }
+
+    /** Forget all rows, as for a newly created index.  Used after the
+     *  type of my column changes. */
+    abstract void clear();
+
+    /** Record the row stored at position K of my table (see Table.value),
+     *  which has just been added to it. */
+    abstract void add(int k);
+
+    /** Return the stored positions of the rows of my table whose value
+     *  in my column is related to VALUE by RELATION, or null if I cannot
+     *  answer that question more cheaply than a full scan. */
+    abstract List<Integer> find(Relation relation, String value);
+
+    /** Return true iff find(RELATION, VALUE) does not return null. */
+    abstract boolean answers(Relation relation, String value);
+
+    /** Return true iff find(CONDITIONS) can use COND to narrow down the
+     *  rows of my table. */
+    boolean answers(Condition cond) {
+        return appliesTo(cond)
+            && answers(cond.getRelation(), cond.getLiteral());
+    }
+
+    /** Return the stored positions of a set of rows of my table that
+     *  includes all those satisfying CONDITIONS, or null if I cannot
+     *  narrow the rows down.  By default, uses whichever of the
+     *  conditions comparing my column with a literal gives the fewest
+     *  rows when passed to find. */
+    List<Integer> find(List<Condition> conditions) {
+        List<Integer> best = null;
+        for (Condition cond : conditions) {
+            if (appliesTo(cond)) {
+                List<Integer> rows =
+                    find(cond.getRelation(), cond.getLiteral());
+                if (rows != null
+                    && (best == null || rows.size() < best.size())) {
+                    best = rows;
+                }
+            }
+        }
+        return best;
+    }
+
+    /** Return true iff COND compares my column with a literal. */
+    boolean appliesTo(Condition cond) {
+        Column col = cond.getColumn1();
+        return cond.getLiteral() != null && col.getTable() == _table
+            && col.getColumn() == _column;
+    }
+
+    /** My name. */
+    private final String _name;
+    /** The table I index. */
+    private final Table _table;
+    /** The number of the column I index in _table. */
+    private final int _column;
+}
@@ -0,0 +1,128 @@
+package db61b;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/** Sorting arrays of ints, such as row numbers, into an order given by
+ *  an IntSort.Order rather than their natural order, without boxing
+ *  them.  The sort is a stable merge sort that sorts the two halves of
+ *  large arrays in parallel on the common fork/join pool, and merges
+ *  two sorted halves by copying when they are already in order, so that
+ *  arrays that are nearly sorted take little more than linear time.
+ *  @author Bo Bi
+ */
+class IntSort {
+
+    /** An ordering of ints. */
+    interface Order {
+        /** Return <0, 0, or >0 depending on whether I comes before J, is
+         *  equivalent to J, or comes after J. */
+        int compare(int i, int j);
+    }
+
+    /** Sort A into the order given by ORDER.  Equivalent elements keep
+     *  their relative order. */
+    static void sort(int[] a, Order order) {
+        int[] scratch = a.clone();
+        if (a.length <= SEQUENTIAL_SIZE
+            || ForkJoinPool.getCommonPoolParallelism() <= 1) {
+            mergeSort(a, scratch, 0, a.length, order);
+        } else {
+            ForkJoinPool.commonPool()
+                .invoke(new Sorter(a, scratch, 0, a.length, order));
+        }
+    }
+
+    /** Sort A[LO .. HI-1] into the order given by ORDER, using
+     *  B[LO .. HI-1], which must initially contain the same values, as
+     *  scratch space. */
+    private static void mergeSort(int[] a, int[] b, int lo, int hi,
+                                  Order order) {
+        if (hi - lo <= INSERTION_SIZE) {
+            insertionSort(a, lo, hi, order);
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        mergeSort(b, a, lo, mid, order);
+        mergeSort(b, a, mid, hi, order);
+        merge(b, a, lo, mid, hi, order);
+    }
+
+    /** Sort A[LO .. HI-1] into the order given by ORDER by insertion. */
+    private static void insertionSort(int[] a, int lo, int hi,
+                                      Order order) {
+        for (int i = lo + 1; i < hi; i += 1) {
+            int x = a[i];
+            int j;
+            for (j = i; j > lo && order.compare(a[j - 1], x) > 0; j -= 1) {
+                a[j] = a[j - 1];
+            }
+            a[j] = x;
+        }
+    }
+
+    /** Merge the sorted runs SRC[LO .. MID-1] and SRC[MID .. HI-1] into
+     *  DEST[LO .. HI-1], in the order given by ORDER. */
+    private static void merge(int[] src, int[] dest, int lo, int mid,
+                              int hi, Order order) {
+        if (order.compare(src[mid - 1], src[mid]) <= 0) {
+            System.arraycopy(src, lo, dest, lo, hi - lo);
+            return;
+        }
+        int i = lo, j = mid;
+        for (int k = lo; k < hi; k += 1) {
+            if (j >= hi || i < mid && order.compare(src[i], src[j]) <= 0) {
+                dest[k] = src[i];
+                i += 1;
+            } else {
+                dest[k] = src[j];
+                j += 1;
+            }
+        }
+    }
+
+    /** Size of the largest part of an array sorted by a single task. */
+    static final int SEQUENTIAL_SIZE = 1 << 13;
+
+    /** Size of the largest run sorted by insertion. */
+    private static final int INSERTION_SIZE = 16;
+
+    /** A task that sorts part of an array, as for mergeSort, sorting the
+     *  halves of large parts in parallel. */
+    private static class Sorter extends RecursiveAction {
+
+        /** A task to sort A[LO .. HI-1] into the order ORDER, using
+         *  B[LO .. HI-1] as scratch space, as for mergeSort. */
+        Sorter(int[] a, int[] b, int lo, int hi, Order order) {
+            _a = a;
+            _b = b;
+            _lo = lo;
+            _hi = hi;
+            _order = order;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo <= SEQUENTIAL_SIZE) {
+                mergeSort(_a, _b, _lo, _hi, _order);
+                return;
+            }
+            int mid = (_lo + _hi) >>> 1;
+            invokeAll(new Sorter(_b, _a, _lo, mid, _order),
+                      new Sorter(_b, _a, mid, _hi, _order));
+            merge(_b, _a, _lo, mid, _hi, _order);
+        }
+
+        /** The array sorted. */
+        private final int[] _a;
+        /** Scratch space. */
+        private final int[] _b;
+        /** The bounds of the part of _a sorted. */
+        private final int _lo, _hi;
+        /** The order into which _a is sorted. */
+        private final Order _order;
+
+        /** Version of this class, as RecursiveAction is Serializable. */
+        private static final long serialVersionUID = 1L;
+    }
+}
@@ -0,0 +1,90 @@
+package db61b;
+
+import java.util.Arrays;
+
+/** A ValueList holding values of Type INT in an array of ints.
+ *  @author Bo Bi
+ */
+class IntValueList extends ValueList {
+
+    /** An empty list. */
+    IntValueList() {
+        _values = new int[INITIAL_CAPACITY];
+        _size = 0;
+    }
+
+    /** A list whose values are the first SIZE elements of VALUES, which
+     *  it shares. */
+    private IntValueList(int[] values, int size) {
+        _values = values;
+        _size = size;
+    }
+
+    @Override
+    Type getType() {
+        return Type.INT;
+    }
+
+    @Override
+    int size() {
+        return _size;
+    }
+
+    @Override
+    String get(int k) {
+        return Integer.toString(intAt(k));
+    }
+
+    @Override
+    long longAt(int k) {
+        return intAt(k);
+    }
+
+    /** Return my Kth value. */
+    int intAt(int k) {
+        if (k >= _size) {
+            throw new IndexOutOfBoundsException();
+        }
+        return _values[k];
+    }
+
+    @Override
+    void add(String value) {
+        add(Integer.parseInt(value));
+    }
+
+    /** Append VALUE to me. */
+    void add(int value) {
+        if (_size == _values.length) {
+            _values = Arrays.copyOf(_values, 2 * _size);
+        }
+        _values[_size] = value;
+        _size += 1;
+    }
+
+    @Override
+    int compare(int k0, int k1) {
+        return Integer.compare(_values[k0], _values[k1]);
+    }
+
+    @Override
+    boolean matches(int k, String value) {
+        return Type.INT.accepts(value)
+            && _values[k] == Integer.parseInt(value);
+    }
+
+    /** Shares my array, since additions to me only change elements
+     *  past my current size, or replace the array. */
+    @Override
+    ValueList snapshot() {
+        return new IntValueList(_values, _size);
+    }
+
+    /** Initial length of _values. */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** My values; only the first _size are in use. */
+    private int[] _values;
+    /** My number of values. */
+    private int _size;
+}
@@ -0,0 +1,493 @@
+package db61b;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/** The natural join of two tables: the pairs of rows, one from each
+ *  table, that agree on all columns with identical names.
+ *  @author Bo Bi
+ */
+class Join {
+
+    /** Receives the pairs of rows produced by a Join. */
+    interface Visitor {
+        /** Process the pair consisting of the row stored at ROW1 in the
+         *  first table and that stored at ROW2 in the second (see
+         *  Table.value). */
+        void visit(int row1, int row2);
+    }
+
+    /** The ways in which run may join two tables. */
+    enum Algorithm {
+        /** Pair every row with every other, when there are no common
+         *  columns. */
+        NESTED_LOOP("nested loop"),
+        /** Merge two inputs already in order of their common columns. */
+        MERGE("merge join"),
+        /** Partition both inputs by key and hash-join the partitions in
+         *  parallel. */
+        PARTITIONED_HASH("partitioned hash join"),
+        /** Hash the smaller input and probe it with the larger. */
+        HASH("hash join"),
+        /** Sort both inputs by their common columns and merge them. */
+        SORT_MERGE("sort-merge join");
+
+        /** An algorithm described as NAME. */
+        Algorithm(String name) {
+            _name = name;
+        }
+
+        /** Return my description. */
+        String getName() {
+            return _name;
+        }
+
+        /** My description. */
+        private final String _name;
+    }
+
+    /** The join of TABLE1 and TABLE2, which matches rows on the columns
+     *  COMMON1 of TABLE1 and COMMON2 of TABLE2.  COMMON1 and COMMON2
+     *  must have the same length, with the kth elements of each
+     *  having the same name.  ROWS1 and ROWS2, if not null, are the
+     *  stored positions of the only rows of TABLE1 and TABLE2 to
+     *  consider; null means all rows. */
+    Join(Table table1, int[] rows1, Table table2, int[] rows2,
+         List<Column> common1, List<Column> common2) {
+        _table1 = table1;
+        _table2 = table2;
+        _rows1 = rows1;
+        _rows2 = rows2;
+        _common1 = common1;
+        _common2 = common2;
+        _numeric = new boolean[common1.size()];
+        for (int k = 0; k < _numeric.length; k += 1) {
+            _numeric[k] = common1.get(k).getValues().getType().isNumeric()
+                && common2.get(k).getValues().getType().isNumeric();
+        }
+        _joinKey = common1.size() != 1 ? null
+            : JoinKey.of(common1.get(0).getValues(),
+                         common2.get(0).getValues());
+    }
+
+    /** The join of all rows of TABLE1 and TABLE2 on the columns COMMON1
+     *  and COMMON2, as for Join(TABLE1, null, TABLE2, null, COMMON1,
+     *  COMMON2). */
+    Join(Table table1, Table table2,
+         List<Column> common1, List<Column> common2) {
+        this(table1, null, table2, null, common1, common2);
+    }
+
+    /** Call VISITOR.visit(ROW1, ROW2) for each pair of rows of my first
+     *  and second tables that agree on my common columns.  When the
+     *  common columns are the leading columns of both tables and all
+     *  their rows are included, the rows are already in key order and
+     *  are merged directly.  Otherwise, when both inputs are large and
+     *  there are several threads to share the work, both are divided
+     *  into partitions by key and the partitions joined in parallel.
+     *  Otherwise, the smaller input is hashed unless it is too large for
+     *  that to be reasonable, in which case both are sorted and
+     *  merged. */
+    void run(Visitor visitor) {
+        int n1 = count(_table1, _rows1), n2 = count(_table2, _rows2);
+        switch (algorithm(n1, _rows1 == null, n2, _rows2 == null)) {
+        case NESTED_LOOP:
+            nestedLoop(visitor);
+            break;
+        case MERGE:
+            mergeJoin(visitor, null, null);
+            break;
+        case PARTITIONED_HASH:
+            partitionedHashJoin(visitor,
+                                ForkJoinPool.getCommonPoolParallelism());
+            break;
+        case HASH:
+            hashJoin(rows(_table1, _rows1), rows(_table2, _rows2), visitor);
+            break;
+        default:
+            mergeJoin(visitor, sortedOrder(_table1, _rows1, _common1),
+                      sortedOrder(_table2, _rows2, _common2));
+            break;
+        }
+    }
+
+    /** Return the algorithm that run uses (see run) to join N1 rows of
+     *  my first table with N2 rows of my second, where ALL1 and ALL2
+     *  indicate whether those are all the rows of the respective
+     *  tables. */
+    Algorithm algorithm(int n1, boolean all1, int n2, boolean all2) {
+        if (_common1.isEmpty()) {
+            return Algorithm.NESTED_LOOP;
+        } else if (all1 && isSortedPrefix(_table1, _common1)
+                   && all2 && isSortedPrefix(_table2, _common2)) {
+            return Algorithm.MERGE;
+        } else if (Math.min(n1, n2) >= PARALLEL_JOIN_THRESHOLD
+                   && ForkJoinPool.getCommonPoolParallelism() > 1) {
+            return Algorithm.PARTITIONED_HASH;
+        } else if (Math.min(n1, n2) <= HASH_BUILD_LIMIT) {
+            return Algorithm.HASH;
+        } else {
+            return Algorithm.SORT_MERGE;
+        }
+    }
+
+    /** Visit every pair of rows with VISITOR.  Used when there are no
+     *  common columns, so that the join is a cross product. */
+    private void nestedLoop(Visitor visitor) {
+        int n1 = count(_table1, _rows1), n2 = count(_table2, _rows2);
+        for (int i = 0; i < n1; i += 1) {
+            int r1 = row(_rows1, i);
+            for (int j = 0; j < n2; j += 1) {
+                visitor.visit(r1, row(_rows2, j));
+            }
+        }
+    }
+
+    /** Visit the matching pairs of the stored rows ROWS1 of my first
+     *  table and ROWS2 of my second with VISITOR by hashing the rows of
+     *  the smaller on their keys (see key) and probing with each row of
+     *  the larger.  The build side is chosen by the exact numbers of
+     *  rows, which the scans have already found, rather than by the
+     *  estimates of TableStats, which could only be worse.  Reads, but
+     *  does not change, me and my tables, so that several may run at
+     *  once. */
+    private void hashJoin(int[] rows1, int[] rows2, Visitor visitor) {
+        boolean buildFirst = rows1.length <= rows2.length;
+        int[] build = buildFirst ? rows1 : rows2,
+            probe = buildFirst ? rows2 : rows1;
+
+        HashMap<Object, Integer> ids = new HashMap<>();
+        long[] keys = new long[build.length];
+        for (int i = 0; i < build.length; i += 1) {
+            keys[i] = key(buildFirst, build[i], ids, true);
+        }
+        RowHash buckets = new RowHash(build, keys);
+
+        for (int r : probe) {
+            long key = key(!buildFirst, r, ids, false);
+            for (int i = buckets.first(key); i != -1; i = buckets.next(i)) {
+                if (buildFirst) {
+                    visitor.visit(buckets.row(i), r);
+                } else {
+                    visitor.visit(r, buckets.row(i));
+                }
+            }
+        }
+    }
+
+    /** Visit matching pairs with VISITOR by dividing the rows of both
+     *  inputs among partitions according to the hashes of their keys,
+     *  using up to PARALLELISM threads, so that matching rows fall in
+     *  corresponding partitions, and then joining each pair of
+     *  partitions with hashJoin on a separate task.  Each task collects
+     *  its matching pairs, which are passed to VISITOR in order of
+     *  partition once all are done. */
+    private void partitionedHashJoin(Visitor visitor, int parallelism) {
+        int bits = 32 - Integer.numberOfLeadingZeros(4 * parallelism - 1);
+        int[][] parts1 = partition(rows(_table1, _rows1), true, bits),
+            parts2 = partition(rows(_table2, _rows2), false, bits);
+        ArrayList<ForkJoinTask<RowList>> tasks = new ArrayList<>();
+        for (int p = 0; p < parts1.length; p += 1) {
+            int[] part1 = parts1[p], part2 = parts2[p];
+            tasks.add(ForkJoinPool.commonPool().submit(() -> {
+                RowList pairs = new RowList();
+                hashJoin(part1, part2, (r1, r2) -> {
+                    pairs.add(r1);
+                    pairs.add(r2);
+                });
+                return pairs;
+            }));
+        }
+        for (ForkJoinTask<RowList> task : tasks) {
+            RowList pairs = task.join();
+            for (int i = 0; i < pairs.size(); i += 2) {
+                visitor.visit(pairs.get(i), pairs.get(i + 1));
+            }
+        }
+    }
+
+    /** Return ROWS, stored rows of my first table if FIRST and of my
+     *  second otherwise, divided into 2**BITS partitions by the hashes of
+     *  their keys (see partitionHash), each in the order of ROWS.  The
+     *  rows are hashed by several tasks, each handling a contiguous range
+     *  of ROWS. */
+    private int[][] partition(int[] rows, boolean first, int bits) {
+        int partitions = 1 << bits;
+        int step = Math.max(1, rows.length / partitions);
+        ArrayList<ForkJoinTask<RowList[]>> tasks = new ArrayList<>();
+        for (int from = 0; from < rows.length; from += step) {
+            int start = from, end = Math.min(rows.length, from + step);
+            tasks.add(ForkJoinPool.commonPool().submit(() -> {
+                RowList[] parts = new RowList[partitions];
+                for (int p = 0; p < partitions; p += 1) {
+                    parts[p] = new RowList();
+                }
+                for (int i = start; i < end; i += 1) {
+                    int hash = partitionHash(first, rows[i]);
+                    parts[bits == 0 ? 0 : hash >>> (32 - bits)].add(rows[i]);
+                }
+                return parts;
+            }));
+        }
+        RowList[] merged = new RowList[partitions];
+        for (int p = 0; p < partitions; p += 1) {
+            merged[p] = new RowList();
+        }
+        for (ForkJoinTask<RowList[]> task : tasks) {
+            RowList[] parts = task.join();
+            for (int p = 0; p < partitions; p += 1) {
+                merged[p].addAll(parts[p]);
+            }
+        }
+        int[][] result = new int[partitions][];
+        for (int p = 0; p < partitions; p += 1) {
+            result[p] = merged[p].toArray();
+        }
+        return result;
+    }
+
+    /** Visit matching pairs with VISITOR in a single merging pass over
+     *  both inputs in order of their common columns.  ORDER1 and ORDER2
+     *  give the stored rows of my first and second tables in that order,
+     *  or are null if the tables' own lexicographic order already is. */
+    private void mergeJoin(Visitor visitor, int[] order1, int[] order2) {
+        Table t1 = _table1, t2 = _table2;
+        int n1 = order1 == null ? t1.size() : order1.length,
+            n2 = order2 == null ? t2.size() : order2.length;
+        int p1, p2;
+        p1 = p2 = 0;
+        while (p1 < n1 && p2 < n2) {
+            int r1 = row(t1, order1, p1), r2 = row(t2, order2, p2);
+            int c = compareKeys(_common1, r1, _common2, r2);
+            if (c < 0) {
+                p1 += 1;
+            } else if (c > 0) {
+                p2 += 1;
+            } else {
+                int end1, end2;
+                for (end1 = p1 + 1; end1 < n1; end1 += 1) {
+                    int r = row(t1, order1, end1);
+                    if (compareKeys(_common1, r, _common2, r2) != 0) {
+                        break;
+                    }
+                }
+                for (end2 = p2 + 1; end2 < n2; end2 += 1) {
+                    int r = row(t2, order2, end2);
+                    if (compareKeys(_common1, r1, _common2, r) != 0) {
+                        break;
+                    }
+                }
+                for (int i = p1; i < end1; i += 1) {
+                    for (int j = p2; j < end2; j += 1) {
+                        visitor.visit(row(t1, order1, i), row(t2, order2, j));
+                    }
+                }
+                p1 = end1;
+                p2 = end2;
+            }
+        }
+    }
+
+    /** Return the number of rows of TABLE included by ROWS (all of them
+     *  if ROWS is null). */
+    private static int count(Table table, int[] rows) {
+        return rows == null ? table.size() : rows.length;
+    }
+
+    /** Return the stored rows of TABLE included by ROWS (all of them if
+     *  ROWS is null), which may be ROWS itself. */
+    private static int[] rows(Table table, int[] rows) {
+        if (rows != null) {
+            return rows;
+        }
+        int[] result = new int[table.size()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = i;
+        }
+        return result;
+    }
+
+    /** Return the Ith stored row included by ROWS (simply I if ROWS is
+     *  null). */
+    private static int row(int[] rows, int i) {
+        return rows == null ? i : rows[i];
+    }
+
+    /** Return the stored row at position P of ORDER, or that of the
+     *  Pth row of TABLE in lexicographic order if ORDER is null. */
+    private static int row(Table table, int[] order, int p) {
+        return order == null ? table.storedRow(p) : order[p];
+    }
+
+    /** Return true iff COMMON, a list of columns from TABLE, consists of
+     *  the first COMMON.size() columns of TABLE, in order, each ordered
+     *  the same way as compareKeys orders it, so that the rows of TABLE
+     *  are already sorted by the values of COMMON. */
+    private boolean isSortedPrefix(Table table, List<Column> common) {
+        for (int k = 0; k < common.size(); k += 1) {
+            if (!table.getTitle(k).equals(common.get(k).getName())
+                || table.getType(k).isNumeric() != _numeric[k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the stored rows of TABLE included by ROWS, ordered by the
+     *  values of its columns COMMON. */
+    private int[] sortedOrder(Table table, int[] rows,
+                              List<Column> common) {
+        int[] order = rows(table, rows).clone();
+        IntSort.sort(order, (r0, r1) -> compareKeys(common, r0, common, r1));
+        return order;
+    }
+
+    /** Return <0, 0, or >0 depending on whether the values of COMMON1 in
+     *  row ROW1 are lexicographically less than, equal to, or greater
+     *  than those of COMMON2 in row ROW2.  The kth values are compared
+     *  as numbers if _numeric[k], and as strings otherwise. */
+    private int compareKeys(List<Column> common1, int row1,
+                            List<Column> common2, int row2) {
+        for (int k = 0; k < common1.size(); k += 1) {
+            ValueList values1 = common1.get(k).getValues(),
+                values2 = common2.get(k).getValues();
+            int c;
+            if (_numeric[k]) {
+                c = Long.compare(values1.longAt(row1), values2.longAt(row2));
+            } else {
+                c = values1.get(row1).compareTo(values2.get(row2));
+            }
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /** Return the key of the row stored at ROW of my first table if
+     *  FIRST, and of my second otherwise, where rows match iff their keys
+     *  are equal.  When the common columns reduce to numbers (see
+     *  JoinKey), that is the key.  Otherwise, their values are numbered
+     *  in IDS: anew if they are not yet numbered and ADD, and as -1,
+     *  which matches nothing, if they are not yet numbered otherwise. */
+    private long key(boolean first, int row, HashMap<Object, Integer> ids,
+                     boolean add) {
+        List<Column> common = first ? _common1 : _common2;
+        if (_joinKey != null) {
+            return _joinKey.get(common.get(0).getValues(), row);
+        }
+        Object values = values(common, row);
+        Integer id = ids.get(values);
+        if (id == null) {
+            if (!add) {
+                return -1;
+            }
+            id = ids.size();
+            ids.put(values, id);
+        }
+        return id;
+    }
+
+    /** Return a hash of the key of the row stored at ROW of my first
+     *  table if FIRST, and of my second otherwise, whose high bits divide
+     *  keys evenly among partitions.  Those bits are independent of the
+     *  low bits used by a RowHash, so that the keys of one partition
+     *  still spread over its slots. */
+    private int partitionHash(boolean first, int row) {
+        List<Column> common = first ? _common1 : _common2;
+        if (_joinKey != null) {
+            long key = _joinKey.get(common.get(0).getValues(), row);
+            return (int) (RowHash.hash(key) >>> 32);
+        }
+        return values(common, row).hashCode() * 0x9e3779b9;
+    }
+
+    /** Return the values of COLUMNS in the row stored at ROW of the
+     *  (single) table they select from: the value itself when there is
+     *  one column, and the list of values otherwise. */
+    private static Object values(List<Column> columns, int row) {
+        if (columns.size() == 1) {
+            return columns.get(0).getValues().get(row);
+        }
+        ArrayList<String> values = new ArrayList<>(columns.size());
+        for (Column column : columns) {
+            values.add(column.getValues().get(row));
+        }
+        return values;
+    }
+
+    /** A growable list of ints. */
+    private static class RowList {
+
+        /** Return my number of elements. */
+        int size() {
+            return _size;
+        }
+
+        /** Return my Ith element. */
+        int get(int i) {
+            return _elements[i];
+        }
+
+        /** Append X to me. */
+        void add(int x) {
+            if (_size == _elements.length) {
+                _elements = Arrays.copyOf(_elements, 2 * _size);
+            }
+            _elements[_size] = x;
+            _size += 1;
+        }
+
+        /** Append the elements of OTHER to me. */
+        void addAll(RowList other) {
+            if (_size + other._size > _elements.length) {
+                _elements = Arrays.copyOf(_elements,
+                                          Math.max(2 * _size,
+                                                   _size + other._size));
+            }
+            System.arraycopy(other._elements, 0, _elements, _size,
+                             other._size);
+            _size += other._size;
+        }
+
+        /** Return my elements as an array. */
+        int[] toArray() {
+            return Arrays.copyOf(_elements, _size);
+        }
+
+        /** My elements; only the first _size are in use. */
+        private int[] _elements = new int[16];
+        /** My number of elements. */
+        private int _size;
+    }
+
+    /** Largest number of rows for which hashJoin will build a hash
+     *  table; joins of larger inputs are sorted and merged instead. */
+    static final int HASH_BUILD_LIMIT = 1 << 20;
+
+    /** Smallest number of rows in each input for which the join is
+     *  divided among the threads of the common fork/join pool, which may
+     *  be changed by setting the system property
+     *  db61b.parallelJoinThreshold. */
+    static final int PARALLEL_JOIN_THRESHOLD =
+        Integer.getInteger("db61b.parallelJoinThreshold", 1 << 16);
+
+    /** The tables being joined. */
+    private final Table _table1, _table2;
+    /** The stored positions of the rows of _table1 and _table2 to
+     *  consider, or null for all rows. */
+    private final int[] _rows1, _rows2;
+    /** The columns of _table1 and _table2 on which rows must agree. */
+    private final List<Column> _common1, _common2;
+    /** _numeric[k] is true iff the kth elements of _common1 and _common2
+     *  are both numeric, so that keys compare them as numbers. */
+    private final boolean[] _numeric;
+    /** Reduces the values of the common column to numbers, or null if
+     *  there is not exactly one common column or its values cannot be so
+     *  reduced. */
+    private final JoinKey _joinKey;
+}
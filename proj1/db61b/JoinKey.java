@@ -0,0 +1,49 @@
+package db61b;
+
+/** A way of reducing the values of two columns being matched in a join,
+ *  one from each table, to longs that are equal iff the values match,
+ *  without creating any objects: the values themselves when both columns
+ *  are numeric, and otherwise the codes of the values in whichever
+ *  column is dictionary-coded (see ValueList.encode).  A value of the
+ *  other column that does not occur in the coded one has the key
+ *  ValueList.ABSENT, which no value of the coded column has.
+ *  @author Bo Bi
+ */
+class JoinKey {
+
+    /** Return a JoinKey for matching VALUES1 with VALUES2, or null if
+     *  neither both are numeric nor either is coded. */
+    static JoinKey of(ValueList values1, ValueList values2) {
+        if (values1.getType().isNumeric() && values2.getType().isNumeric()) {
+            return new JoinKey(null);
+        } else if (values1.encode("") != ValueList.NOT_CODED) {
+            return new JoinKey(values1);
+        } else if (values2.encode("") != ValueList.NOT_CODED) {
+            return new JoinKey(values2);
+        } else {
+            return null;
+        }
+    }
+
+    /** A JoinKey that uses the codes of CODED, or the numeric values of
+     *  both columns if CODED is null. */
+    private JoinKey(ValueList coded) {
+        _coded = coded;
+    }
+
+    /** Return the key of the Kth value of VALUES, which must be one of
+     *  the two lists I was created for. */
+    long get(ValueList values, int k) {
+        if (_coded == null) {
+            return values.longAt(k);
+        } else if (values == _coded) {
+            return values.codeAt(k);
+        } else {
+            return _coded.encode(values.get(k));
+        }
+    }
+
+    /** The column whose codes are used as keys, or null if both columns
+     *  are numeric. */
+    private final ValueList _coded;
+}
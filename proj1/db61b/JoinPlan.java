@@ -0,0 +1,363 @@
+package db61b;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/** A plan for the natural join of any number of tables: the
+ *  combinations of rows, one from each table, that agree on all columns
+ *  with identical names and satisfy a list of conditions.  The
+ *  conditions that refer to a single table are applied to that table
+ *  beforehand (see Table.scan), which gives the number of rows of each
+ *  that take part.  The tables are joined one at a time in an order
+ *  chosen by estimated cardinality: the smallest filtered table first,
+ *  and after that, whichever table is expected to give the smallest
+ *  join with those before it, judging by the numbers of distinct values
+ *  in their shared columns where the tables have been analyzed (see
+ *  TableStats).  When run, every table but the first is hashed on the
+ *  columns it shares with those before it, and each row of the first
+ *  table is extended through that pipeline of hash tables, testing
+ *  each remaining condition as soon as all the tables it refers to are
+ *  in place, so that no intermediate join is stored.
+ *  @author Bo Bi
+ */
+class JoinPlan {
+
+    /** Receives the combinations of rows produced by a JoinPlan. */
+    interface Visitor {
+        /** Process the combination consisting of the row stored at
+         *  ROWS[k] in the kth table, for each k (see Table.value).  ROWS
+         *  is reused for the next combination once this returns. */
+        void visit(int[] rows);
+    }
+
+    /** A plan for joining SIZES[k] rows of the kth of TABLES, for each
+     *  k, where the columns of CONDITIONS select from TABLES, in order
+     *  (see Column).  Conditions that refer to only one table are
+     *  ignored.  STATS holds the statistics of each table, or null for a
+     *  table that has none. */
+    JoinPlan(List<Table> tables, List<TableStats> stats, int[] sizes,
+             List<Condition> conditions) {
+        int n = tables.size();
+        _tables = tables;
+        _stats = stats;
+        _sizes = sizes;
+
+        _order = new int[n];
+        _estimates = new double[n];
+        boolean[] placed = new boolean[n];
+        for (int s = 0; s < n; s += 1) {
+            int best = -1;
+            for (int k = 0; k < n; k += 1) {
+                if (!placed[k]) {
+                    double estimate = estimate(s, k);
+                    if (best == -1 || estimate < _estimates[s]) {
+                        best = k;
+                        _estimates[s] = estimate;
+                    }
+                }
+            }
+            _order[s] = best;
+            placed[best] = true;
+        }
+
+        _buildColumns = new int[n][];
+        _probeTables = new int[n][];
+        _probeColumns = new int[n][];
+        _joinKeys = new JoinKey[n];
+        _conditions = new ArrayList<>();
+        for (int s = 0; s < n; s += 1) {
+            plan(s);
+        }
+        _produced = new long[n];
+        for (Condition cond : conditions) {
+            if (!selectsFromOne(cond)) {
+                _conditions.get(lastStep(cond)).add(cond);
+            }
+        }
+    }
+
+    /** Call VISITOR.visit for each combination of rows in my join, taking
+     *  ROWS[k] to be the stored positions of the rows of my kth table
+     *  that take part, of which there must be as many as I was planned
+     *  for.  First hashes each table but the first on the columns it
+     *  shares with those joined before it. */
+    void run(int[][] rows, Visitor visitor) {
+        _buckets = new ArrayList<>();
+        _ids = new ArrayList<>();
+        for (int s = 0; s < _order.length; s += 1) {
+            _ids.add(new HashMap<>());
+            _buckets.add(hash(s, rows[_order[s]]));
+            _produced[s] = 0;
+        }
+        extend(0, new int[_tables.size()], visitor);
+        _buckets = null;
+        _ids = null;
+    }
+
+    /** Return the number of tables I join. */
+    int tables() {
+        return _order.length;
+    }
+
+    /** Return the number in my list of tables of the table joined at
+     *  step S of my order (0 <= S < tables()). */
+    int tableAt(int s) {
+        return _order[s];
+    }
+
+    /** Return the estimated number of combinations of rows from the
+     *  tables joined in steps 0 through S. */
+    double estimate(int s) {
+        return _estimates[s];
+    }
+
+    /** Return the number of combinations of rows from the tables joined
+     *  in steps 0 through S that the last run produced. */
+    long produced(int s) {
+        return _produced[s];
+    }
+
+    /** Return the names of the columns on which the table joined at step
+     *  S matches those joined before it. */
+    List<String> sharedColumns(int s) {
+        List<String> names = new ArrayList<>();
+        for (int col : _buildColumns[s]) {
+            names.add(_tables.get(_order[s]).getTitle(col));
+        }
+        return names;
+    }
+
+    /** Return the conditions tested once the table joined at step S is
+     *  in place. */
+    List<Condition> conditionsAt(int s) {
+        return _conditions.get(s);
+    }
+
+    /** Find the columns on which the table joined at step S matches
+     *  those joined before it. */
+    private void plan(int s) {
+        int k = _order[s];
+        Table table = _tables.get(k);
+        ArrayList<Integer> shared = new ArrayList<>();
+        for (int i = 0; i < table.columns(); i += 1) {
+            if (earlierTableWith(s, table.getTitle(i)) != -1) {
+                shared.add(i);
+            }
+        }
+        _buildColumns[s] = new int[shared.size()];
+        _probeTables[s] = new int[shared.size()];
+        _probeColumns[s] = new int[shared.size()];
+        for (int j = 0; j < shared.size(); j += 1) {
+            String name = table.getTitle(shared.get(j));
+            _buildColumns[s][j] = shared.get(j);
+            _probeTables[s][j] = earlierTableWith(s, name);
+            _probeColumns[s][j] =
+                _tables.get(_probeTables[s][j]).findColumn(name);
+        }
+        if (shared.size() == 1) {
+            _joinKeys[s] =
+                JoinKey.of(table.values(_buildColumns[s][0]),
+                           _tables.get(_probeTables[s][0])
+                           .values(_probeColumns[s][0]));
+        }
+        _conditions.add(new ArrayList<>());
+    }
+
+    /** Return the rows stored at positions ROWS of the table joined at
+     *  step S, hashed on the keys of their values of its
+     *  _buildColumns[s] (see key).  The table joined first has no such
+     *  columns, so all its rows share one key. */
+    private RowHash hash(int s, int[] rows) {
+        int k = _order[s];
+        int[] buildTables = new int[_buildColumns[s].length];
+        Arrays.fill(buildTables, k);
+        long[] keys = new long[rows.length];
+        int[] combination = new int[_tables.size()];
+        for (int i = 0; i < rows.length; i += 1) {
+            combination[k] = rows[i];
+            keys[i] = key(s, buildTables, _buildColumns[s], combination,
+                          true);
+        }
+        return new RowHash(rows, keys);
+    }
+
+    /** Extend ROWS, in which the rows of the tables joined in steps
+     *  before S are in place, with each matching row of the table joined
+     *  at step S, and so on through the rest of my order, passing each
+     *  complete combination to VISITOR. */
+    private void extend(int s, int[] rows, Visitor visitor) {
+        if (s == _order.length) {
+            visitor.visit(rows);
+            return;
+        }
+        RowHash buckets = _buckets.get(s);
+        long key = key(s, _probeTables[s], _probeColumns[s], rows, false);
+        int k = _order[s];
+        for (int i = buckets.first(key); i != -1; i = buckets.next(i)) {
+            rows[k] = buckets.row(i);
+            if (Condition.test(_conditions.get(s), rows)) {
+                _produced[s] += 1;
+                extend(s + 1, rows, visitor);
+            }
+        }
+    }
+
+    /** Return the estimated number of combinations of rows from the
+     *  tables joined before step S and table number K, if K were joined
+     *  at step S.  A table sharing no column gives a cross product.
+     *  Otherwise, the rows on each side are taken to be spread evenly
+     *  over the distinct values of each shared column, with every value
+     *  on the side having fewer of them also appearing on the other, and
+     *  the shared columns to be independent.  When a shared column
+     *  has no statistics on one side, it is instead taken to be a key of
+     *  one side or the other, so that the join is no larger than its
+     *  larger input. */
+    private double estimate(int s, int k) {
+        double size = _sizes[k];
+        if (s == 0) {
+            return size;
+        }
+        double before = _estimates[s - 1];
+        Table table = _tables.get(k);
+        boolean shared = false, known = true;
+        double divisor = 1;
+        for (int i = 0; i < table.columns(); i += 1) {
+            String name = table.getTitle(i);
+            int source = earlierTableWith(s, name);
+            if (source != -1) {
+                double distinct = distinct(k, name, size),
+                    earlier = distinct(source, name, before);
+                shared = true;
+                known &= distinct > 0 && earlier > 0;
+                divisor *= Math.max(distinct, earlier);
+            }
+        }
+        if (!shared) {
+            return before * size;
+        } else if (!known) {
+            return Math.max(before, size);
+        } else {
+            return before * size / divisor;
+        }
+    }
+
+    /** Return the estimated number of distinct values in the column named
+     *  NAME of those of the rows of my Kth table that take part in a
+     *  join with an estimated ROWS rows, or 0 if the table has no
+     *  statistics for that column. */
+    private double distinct(int k, String name, double rows) {
+        TableStats stats = _stats.get(k);
+        int col = stats == null ? -1 : stats.findColumn(name);
+        if (col == -1) {
+            return 0;
+        }
+        return Math.max(1, Math.min(stats.distinct(col), rows));
+    }
+
+    /** Return the number of the first of the tables joined before step S
+     *  that has a column named NAME, or -1 if there is none. */
+    private int earlierTableWith(int s, String name) {
+        for (int t = 0; t < s; t += 1) {
+            if (_tables.get(_order[t]).findColumn(name) != -1) {
+                return _order[t];
+            }
+        }
+        return -1;
+    }
+
+    /** Return the step of my order at which the last of the tables from
+     *  which COND's columns select is joined. */
+    private int lastStep(Condition cond) {
+        int s = _order.length - 1;
+        while (_order[s] != cond.getColumn1().getTableIndex()
+               && (cond.getColumn2() == null
+                   || _order[s] != cond.getColumn2().getTableIndex())) {
+            s -= 1;
+        }
+        return s;
+    }
+
+    /** Return true iff COND refers to only one of my tables. */
+    private boolean selectsFromOne(Condition cond) {
+        for (int k = 0; k < _tables.size(); k += 1) {
+            if (cond.selectsFrom(k)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the key at step S of the values of columns COLUMNS[j] of
+     *  tables TABLES[j] in the rows stored at ROWS[TABLES[j]], for all j,
+     *  which are either the columns of the table joined at step S that it
+     *  shares with the tables before it, or the matching columns of those
+     *  tables.  Values that match have equal keys.  When there is one
+     *  column and its values reduce to numbers (see JoinKey), that is the
+     *  key.  Otherwise, the values are numbered in _ids.get(S): anew if
+     *  they are not yet numbered and ADD, and as -1, which matches
+     *  nothing, if they are not yet numbered otherwise. */
+    private long key(int s, int[] tables, int[] columns, int[] rows,
+                     boolean add) {
+        if (columns.length == 0) {
+            return 0;
+        } else if (_joinKeys[s] != null) {
+            return _joinKeys[s].get(_tables.get(tables[0]).values(columns[0]),
+                                    rows[tables[0]]);
+        }
+        ArrayList<String> values = new ArrayList<>(columns.length);
+        for (int j = 0; j < columns.length; j += 1) {
+            values.add(_tables.get(tables[j]).value(rows[tables[j]],
+                                                    columns[j]));
+        }
+        HashMap<Object, Integer> ids = _ids.get(s);
+        Integer id = ids.get(values);
+        if (id == null) {
+            if (!add) {
+                return -1;
+            }
+            id = ids.size();
+            ids.put(values, id);
+        }
+        return id;
+    }
+
+    /** The tables I join. */
+    private final List<Table> _tables;
+    /** The statistics of each of _tables, or null where there are
+     *  none. */
+    private final List<TableStats> _stats;
+    /** _sizes[k] is the number of rows of my kth table that take part. */
+    private final int[] _sizes;
+    /** The numbers of my tables in the order in which they are joined. */
+    private final int[] _order;
+    /** _estimates[s] is the estimated size of the join of the tables
+     *  joined in steps 0 through s. */
+    private final double[] _estimates;
+    /** _buildColumns[s] holds the numbers of the columns of the table
+     *  joined at step s that it shares with the tables joined before. */
+    private final int[][] _buildColumns;
+    /** _probeTables[s][j] and _probeColumns[s][j] are the numbers of the
+     *  table joined before step s, and of its column, that supply the
+     *  value to match with column _buildColumns[s][j]. */
+    private final int[][] _probeTables, _probeColumns;
+    /** _joinKeys[s] reduces the values of the one column that the table
+     *  joined at step s shares with those before it to numbers, or is
+     *  null if there is not exactly one such column or its values cannot
+     *  be so reduced. */
+    private final JoinKey[] _joinKeys;
+    /** For each step, the rows of the table joined at that step, hashed
+     *  on the keys of their values of its _buildColumns (see hash), while
+     *  running. */
+    private List<RowHash> _buckets;
+    /** For each step, the numbers of the values of its _buildColumns
+     *  that do not reduce to numbers (see key), while running. */
+    private List<HashMap<Object, Integer>> _ids;
+    /** For each step, the conditions that refer to more than one table
+     *  and can first be tested once that step's table is in place. */
+    private final List<List<Condition>> _conditions;
+    /** _produced[s] is the number of combinations of rows from the
+     *  tables joined in steps 0 through s produced by the last run. */
+    private final long[] _produced;
+}
@@ -0,0 +1,241 @@
+package db61b;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/** A lexical analyzer that divides the characters read from a Reader
+ *  into the tokens of db61b commands.  It finds exactly the tokens that
+ *  Tokenizer finds by matching its regular expression (see
+ *  Tokenizer.TOKEN_PATN) against a Scanner, but works as a hand-written
+ *  finite automaton over a large buffer of characters: the first
+ *  character of each token decides its kind, after which the token
+ *  extends over the characters that may continue a token of that kind.
+ *  Blanks between tokens are skipped.  Characters are read only as
+ *  needed to decide where a token ends, so that prompting (see
+ *  Tokenizer) works as it does for a Scanner.  An IOException while
+ *  reading is treated as the end of input, as a Scanner treats it.
+ *  @author Bo Bi
+ */
+class Lexer {
+
+    /** The kinds of token. */
+    enum Kind {
+        /** A name or keyword: a letter or underscore followed by any
+         *  number of letters, digits, and underscores. */
+        IDENTIFIER,
+        /** Text enclosed in single quotes, which contains no comma or
+         *  end of line. */
+        LITERAL,
+        /** One of the relation symbols =, !=, <, <=, >, and >=. */
+        RELATION,
+        /** Any other character that is not a blank. */
+        PUNCTUATION,
+        /** An end of line: a newline, possibly preceded by a return. */
+        NEWLINE,
+        /** Text enclosed in slash-star and star-slash. */
+        COMMENT,
+        /** A literal missing its closing quote, which ends just before the
+         *  next comma or end of line, or at the end of input. */
+        UNTERMINATED_LITERAL,
+        /** A comment missing its closing star-slash, which extends to the
+         *  end of input. */
+        UNTERMINATED_COMMENT,
+        /** The end of input. */
+        END
+    }
+
+    /** A lexer for the characters read from INPUT. */
+    Lexer(Reader input) {
+        _input = input;
+        _chars = new char[BUFFER_SIZE];
+    }
+
+    /** Read past the next token and return its kind.  The text of the
+     *  token, other than a comment, is then available from text. */
+    Kind next() {
+        while (true) {
+            _start = _pos;
+            int c = charAt(0);
+            switch (c) {
+            case -1:
+                return Kind.END;
+            case ' ': case '\t': case '\u000B': case '\f':
+                _pos += 1;
+                continue;
+            case '\r':
+                if (charAt(1) == '\n') {
+                    _pos += 2;
+                    return Kind.NEWLINE;
+                }
+                _pos += 1;
+                continue;
+            case '\n':
+                _pos += 1;
+                return Kind.NEWLINE;
+            case '=':
+                _pos += 1;
+                return Kind.RELATION;
+            case '<': case '>': case '!':
+                if (charAt(1) == '=') {
+                    _pos += 2;
+                    return Kind.RELATION;
+                }
+                _pos += 1;
+                return c == '!' ? Kind.PUNCTUATION : Kind.RELATION;
+            case '\'':
+                return literal();
+            case '/':
+                if (charAt(1) == '*') {
+                    return comment();
+                }
+                _pos += 1;
+                return Kind.PUNCTUATION;
+            default:
+                if (isIdentifierStart(c)) {
+                    return identifier();
+                }
+                if (Character.isHighSurrogate((char) c)
+                    && Character.isLowSurrogate((char) charAt(1))) {
+                    _pos += 2;
+                } else {
+                    _pos += 1;
+                }
+                return Kind.PUNCTUATION;
+            }
+        }
+    }
+
+    /** Return the text of the last token read by next, unless it was a
+     *  comment. */
+    String text() {
+        int length = _pos - _start;
+        if (length == 1 && _chars[_start] < SINGLE_CHARS.length) {
+            return SINGLE_CHARS[_chars[_start]];
+        }
+        return new String(_chars, _start, length);
+    }
+
+    /** Read past an identifier, whose first character is next, and
+     *  return its kind. */
+    private Kind identifier() {
+        _pos += 1;
+        while (isIdentifierPart(charAt(0))) {
+            _pos += 1;
+        }
+        return Kind.IDENTIFIER;
+    }
+
+    /** Read past a literal, whose opening quote is next, and return its
+     *  kind. */
+    private Kind literal() {
+        _pos += 1;
+        while (true) {
+            switch (charAt(0)) {
+            case -1: case ',': case '\n': case '\r':
+                return Kind.UNTERMINATED_LITERAL;
+            case '\'':
+                _pos += 1;
+                return Kind.LITERAL;
+            default:
+                _pos += 1;
+            }
+        }
+    }
+
+    /** Read past a comment, whose opening slash-star is next, and
+     *  return its kind.  Its text is not kept. */
+    private Kind comment() {
+        _pos += 2;
+        while (true) {
+            _start = _pos;
+            int c = charAt(0);
+            if (c == -1) {
+                return Kind.UNTERMINATED_COMMENT;
+            } else if (c == '*' && charAt(1) == '/') {
+                _pos += 2;
+                return Kind.COMMENT;
+            }
+            _pos += 1;
+        }
+    }
+
+    /** Return the character K positions after the next unread one, or -1
+     *  if the input ends before it.  Reads more input only if that
+     *  character has not yet been read. */
+    private int charAt(int k) {
+        while (_pos + k >= _limit) {
+            if (!fill()) {
+                return -1;
+            }
+        }
+        return _chars[_pos + k];
+    }
+
+    /** Read more input into _chars, first discarding the characters
+     *  before the current token to make room, and doubling the size of
+     *  _chars if the current token fills it.  Return false iff there is
+     *  no more input. */
+    private boolean fill() {
+        if (_eof) {
+            return false;
+        }
+        if (_limit == _chars.length) {
+            char[] chars = _chars;
+            if (_start == 0) {
+                chars = new char[2 * _chars.length];
+            }
+            System.arraycopy(_chars, _start, chars, 0, _limit - _start);
+            _chars = chars;
+            _pos -= _start;
+            _limit -= _start;
+            _start = 0;
+        }
+        int n;
+        try {
+            n = _input.read(_chars, _limit, _chars.length - _limit);
+        } catch (IOException excp) {
+            n = -1;
+        }
+        if (n <= 0) {
+            _eof = true;
+            return false;
+        }
+        _limit += n;
+        return true;
+    }
+
+    /** Return true iff C may begin an identifier. */
+    private static boolean isIdentifierStart(int c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c == '_';
+    }
+
+    /** Return true iff C may continue an identifier. */
+    private static boolean isIdentifierPart(int c) {
+        return isIdentifierStart(c) || c >= '0' && c <= '9';
+    }
+
+    /** Initial size of the character buffer. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** SINGLE_CHARS[c] is the string consisting of the character c, for
+     *  each ASCII character, so that one-character tokens are not
+     *  created anew each time. */
+    private static final String[] SINGLE_CHARS = new String[128];
+
+    static {
+        for (char c = 0; c < SINGLE_CHARS.length; c += 1) {
+            SINGLE_CHARS[c] = String.valueOf(c);
+        }
+    }
+
+    /** The source of characters. */
+    private final Reader _input;
+    /** The characters read so far that are still needed.  The current
+     *  token starts at _start, the next unread character is at _pos, and
+     *  the characters read from _input end at _limit. */
+    private char[] _chars;
+    /** Positions in _chars (see _chars). */
+    private int _start, _pos, _limit;
+    /** True once _input has reached its end. */
+    private boolean _eof;
+}
@@ -0,0 +1,85 @@
+package db61b;
+
+import java.util.Arrays;
+
+/** A ValueList holding values of Type LONG in an array of longs.
+ *  @author Bo Bi
+ */
+class LongValueList extends ValueList {
+
+    /** An empty list. */
+    LongValueList() {
+        _values = new long[INITIAL_CAPACITY];
+        _size = 0;
+    }
+
+    /** A list whose values are the first SIZE elements of VALUES, which
+     *  it shares. */
+    private LongValueList(long[] values, int size) {
+        _values = values;
+        _size = size;
+    }
+
+    @Override
+    Type getType() {
+        return Type.LONG;
+    }
+
+    @Override
+    int size() {
+        return _size;
+    }
+
+    @Override
+    String get(int k) {
+        return Long.toString(longAt(k));
+    }
+
+    @Override
+    long longAt(int k) {
+        if (k >= _size) {
+            throw new IndexOutOfBoundsException();
+        }
+        return _values[k];
+    }
+
+    @Override
+    void add(String value) {
+        add(Long.parseLong(value));
+    }
+
+    /** Append VALUE to me. */
+    void add(long value) {
+        if (_size == _values.length) {
+            _values = Arrays.copyOf(_values, 2 * _size);
+        }
+        _values[_size] = value;
+        _size += 1;
+    }
+
+    @Override
+    int compare(int k0, int k1) {
+        return Long.compare(_values[k0], _values[k1]);
+    }
+
+    @Override
+    boolean matches(int k, String value) {
+        return Type.LONG.accepts(value)
+            && _values[k] == Long.parseLong(value);
+    }
+
+    /** Shares my array, since additions to me only change elements
+     *  past my current size, or replace the array. */
+    @Override
+    ValueList snapshot() {
+        return new LongValueList(_values, _size);
+    }
+
+    /** Initial length of _values. */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** My values; only the first _size are in use. */
+    private long[] _values;
+    /** My number of values. */
+    private int _size;
+}
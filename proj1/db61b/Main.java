@@ -1,5 +1,6 @@
 package db61b;
 
+import java.io.InputStreamReader;
 import java.util.Scanner;
 
 /** The main program for db61b.
@@ -12,15 +13,23 @@ public class Main {
 
     /** Starting with an empty database, read and execute commands from
      *  System.in until receiving a 'quit' ('exit') command or until
-     *  reaching the end of input. */
+     *  reaching the end of input.  The commands are divided into tokens
+     *  by a Lexer, or, if the system property db61b.lexer is "regex", by
+     *  matching regular expressions against a Scanner (see Tokenizer). */
     public static void main(String[] unused) {
         System.out.printf("DB61B System.  Version %s.%n", VERSION);
 
         Database db = new Database();
 
-        Scanner input = new Scanner(System.in);
-        CommandInterpreter interpreter =
-            new CommandInterpreter(input, System.out);
+        CommandInterpreter interpreter;
+        if ("regex".equals(System.getProperty("db61b.lexer"))) {
+            interpreter =
+                new CommandInterpreter(new Scanner(System.in), System.out);
+        } else {
+            interpreter =
+                new CommandInterpreter(new InputStreamReader(System.in),
+                                       System.out);
+        }
 
         while (true) {
             try {
@@ -32,6 +41,9 @@ public class Main {
                 interpreter.skipCommand();
             }
         }
+        for (DBException e : DBFile.awaitWrites()) {
+            System.out.printf("Error: %s%n", e.getMessage());
+        }
     }
 
 }
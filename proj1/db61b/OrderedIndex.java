@@ -0,0 +1,140 @@
+package db61b;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/** An Index that keeps the values of its column in sorted order, each
+ *  mapped to the rows having that value, so that it answers range
+ *  tests ("<", "<=", ">", ">=") as well as equality tests with a
+ *  bounded scan.
+ *  @author Bo Bi
+ */
+class OrderedIndex extends Index {
+
+    /** An ordered index named NAME on column number COLUMN of TABLE. */
+    OrderedIndex(String name, Table table, int column) {
+        super(name, table, column);
+        clear();
+    }
+
+    @Override
+    void clear() {
+        _type = getTable().getType(getColumn());
+        _rows = new TreeMap<>(_type::compare);
+    }
+
+    @Override
+    void add(int k) {
+        String value = getTable().value(k, getColumn());
+        ArrayList<Integer> rows = _rows.get(value);
+        if (rows == null) {
+            rows = new ArrayList<>(1);
+            _rows.put(value, rows);
+        }
+        rows.add(k);
+    }
+
+    @Override
+    boolean answers(Relation relation, String value) {
+        return relation != Relation.NE && _type.accepts(value);
+    }
+
+    @Override
+    List<Integer> find(Relation relation, String value) {
+        if (!answers(relation, value)) {
+            return null;
+        }
+        switch (relation) {
+        case EQ:
+            return range(value, true, value, true);
+        case LT:
+            return range(null, false, value, false);
+        case LE:
+            return range(null, false, value, true);
+        case GT:
+            return range(value, false, null, false);
+        case GE:
+            return range(value, true, null, false);
+        default:
+            return null;
+        }
+    }
+
+    /** Return the rows satisfying all of CONDITIONS that compare my
+     *  column by "=", "<", "<=", ">", or ">=" with a literal valid for
+     *  its type, found in one scan between the tightest of their
+     *  bounds.  Returns null if there are no such conditions. */
+    @Override
+    List<Integer> find(List<Condition> conditions) {
+        String low, high;
+        boolean lowInclusive, highInclusive, bounded;
+        low = high = null;
+        lowInclusive = highInclusive = bounded = false;
+        for (Condition cond : conditions) {
+            if (!appliesTo(cond) || !_type.accepts(cond.getLiteral())) {
+                continue;
+            }
+            Relation relation = cond.getRelation();
+            String value = cond.getLiteral();
+            /* A relation bounds my column from below iff it never holds
+             * for values less than the literal, and similarly above. */
+            boolean lower = !relation.holds(-1),
+                upper = !relation.holds(1);
+            boolean inclusive = relation.holds(0);
+            if (lower) {
+                int c = low == null ? 1 : _type.compare(value, low);
+                if (c > 0 || c == 0 && !inclusive) {
+                    low = value;
+                    lowInclusive = inclusive;
+                }
+            }
+            if (upper) {
+                int c = high == null ? -1 : _type.compare(value, high);
+                if (c < 0 || c == 0 && !inclusive) {
+                    high = value;
+                    highInclusive = inclusive;
+                }
+            }
+            bounded |= lower || upper;
+        }
+        if (!bounded) {
+            return null;
+        }
+        return range(low, lowInclusive, high, highInclusive);
+    }
+
+    /** Return the rows whose value in my column lies between LOW and
+     *  HIGH, which are included in the range iff LOWINCLUSIVE and
+     *  HIGHINCLUSIVE, respectively.  A null bound is unlimited. */
+    private List<Integer> range(String low, boolean lowInclusive,
+                                String high, boolean highInclusive) {
+        if (low != null && high != null) {
+            int c = _type.compare(low, high);
+            if (c > 0 || c == 0 && !(lowInclusive && highInclusive)) {
+                return Collections.emptyList();
+            }
+        }
+        NavigableMap<String, ArrayList<Integer>> span = _rows;
+        if (low != null) {
+            span = span.tailMap(low, lowInclusive);
+        }
+        if (high != null) {
+            span = span.headMap(high, highInclusive);
+        }
+        ArrayList<Integer> result = new ArrayList<>();
+        for (ArrayList<Integer> rows : span.values()) {
+            result.addAll(rows);
+        }
+        return result;
+    }
+
+    /** The type of my column when I was last cleared, which determines
+     *  the order of my values. */
+    private Type _type;
+    /** Maps each value in my column, in sorted order, to the stored
+     *  positions of the rows containing it. */
+    private TreeMap<String, ArrayList<Integer>> _rows;
+}
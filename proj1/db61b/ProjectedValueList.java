@@ -0,0 +1,84 @@
+package db61b;
+
+/** A read-only ValueList whose values are selected from another, so
+ *  that the result of a select can refer to the values of the tables
+ *  it selects from rather than copying them.  Its Kth value is the
+ *  value of the other list at the Kth of a given array of positions.
+ *  Like other read-only lists, it must be replaced by mutable() before
+ *  anything is added to it, which is when its values are copied.
+ *  @author Bo Bi
+ */
+class ProjectedValueList extends ValueList {
+
+    /** A list whose Kth value is the value of BASE at ROWS[K].  Only
+     *  the first ROWS.length values of BASE are used, so that BASE may
+     *  later grow. */
+    ProjectedValueList(ValueList base, int[] rows) {
+        _base = base;
+        _rows = rows;
+    }
+
+    @Override
+    Type getType() {
+        return _base.getType();
+    }
+
+    @Override
+    int size() {
+        return _rows.length;
+    }
+
+    @Override
+    String get(int k) {
+        return _base.get(_rows[k]);
+    }
+
+    @Override
+    void add(String value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    int compare(int k0, int k1) {
+        return _base.compare(_rows[k0], _rows[k1]);
+    }
+
+    @Override
+    long longAt(int k) {
+        return _base.longAt(_rows[k]);
+    }
+
+    @Override
+    boolean matches(int k, String value) {
+        return _base.matches(_rows[k], value);
+    }
+
+    @Override
+    int encode(String value) {
+        return _base.encode(value);
+    }
+
+    @Override
+    int codeAt(int k) {
+        return _base.codeAt(_rows[k]);
+    }
+
+    @Override
+    ValueList snapshot() {
+        return new ProjectedValueList(_base.snapshot(), _rows);
+    }
+
+    @Override
+    ValueList mutable() {
+        ValueList copy = getType().newValueList();
+        for (int k = 0; k < _rows.length; k += 1) {
+            copy.add(get(k));
+        }
+        return copy;
+    }
+
+    /** The list from which my values are selected. */
+    private final ValueList _base;
+    /** The positions in _base of my values. */
+    private final int[] _rows;
+}
@@ -0,0 +1,80 @@
+package db61b;
+
+import static db61b.Utils.error;
+
+/** The relations that a Condition may test between its operands.
+ *  @author Bo Bi
+ */
+enum Relation {
+    /** Equal. */
+    EQ("="),
+    /** Not equal. */
+    NE("!="),
+    /** Less than. */
+    LT("<"),
+    /** Less than or equal. */
+    LE("<="),
+    /** Greater than. */
+    GT(">"),
+    /** Greater than or equal. */
+    GE(">=");
+
+    /** A relation written SYMBOL. */
+    Relation(String symbol) {
+        _symbol = symbol;
+    }
+
+    /** Return the relation written SYMBOL. */
+    static Relation forSymbol(String symbol) {
+        for (Relation relation : values()) {
+            if (relation._symbol.equals(symbol)) {
+                return relation;
+            }
+        }
+        throw error("unknown relation: %s", symbol);
+    }
+
+    /** Return the symbol that denotes me. */
+    String getSymbol() {
+        return _symbol;
+    }
+
+    /** Return true iff I hold between two values the first of which is
+     *  less than, equal to, or greater than the second according to
+     *  whether C is <0, 0, or >0. */
+    boolean holds(int c) {
+        switch (this) {
+        case EQ:
+            return c == 0;
+        case NE:
+            return c != 0;
+        case LT:
+            return c < 0;
+        case LE:
+            return c <= 0;
+        case GT:
+            return c > 0;
+        default:
+            return c >= 0;
+        }
+    }
+
+    /** Return true iff I may hold between some value in a range and a
+     *  second value, given that the smallest and largest values in the
+     *  range compare with the second as CMIN and CMAX do with 0. */
+    boolean mayHold(int cmin, int cmax) {
+        switch (this) {
+        case EQ:
+            return cmin <= 0 && cmax >= 0;
+        case NE:
+            return cmin != 0 || cmax != 0;
+        case LT: case LE:
+            return holds(cmin);
+        default:
+            return holds(cmax);
+        }
+    }
+
+    /** My symbol. */
+    private final String _symbol;
+}
@@ -0,0 +1,83 @@
+package db61b;
+
+import java.util.Arrays;
+
+/** A hash table from long keys to the stored rows of a table having
+ *  them, for joins.  The rows and keys are kept in arrays, and the
+ *  entries that hash to the same slot are chained through a third, so
+ *  that nothing is boxed.  The entries with any one key are found in the
+ *  order in which they were given.
+ *  @author Bo Bi
+ */
+class RowHash {
+
+    /** A table holding the entries ROWS[i], with key KEYS[i], for each
+     *  i. */
+    RowHash(int[] rows, long[] keys) {
+        int bits = Math.min(MAX_BITS,
+                            33 - Integer.numberOfLeadingZeros(rows.length));
+        _rows = rows;
+        _keys = keys;
+        _mask = (1 << bits) - 1;
+        _heads = new int[1 << bits];
+        Arrays.fill(_heads, -1);
+        _next = new int[rows.length];
+        for (int i = rows.length - 1; i >= 0; i -= 1) {
+            int slot = (int) hash(keys[i]) & _mask;
+            _next[i] = _heads[slot];
+            _heads[slot] = i;
+        }
+    }
+
+    /** Return the number of the first entry with key KEY, or -1 if there
+     *  is none. */
+    int first(long key) {
+        return find(_heads[(int) hash(key) & _mask], key);
+    }
+
+    /** Return the number of the entry after entry I with the same key,
+     *  or -1 if there is none. */
+    int next(int i) {
+        return find(_next[i], _keys[i]);
+    }
+
+    /** Return the row of entry I. */
+    int row(int i) {
+        return _rows[i];
+    }
+
+    /** Return a hash of KEY, each bit of which depends on every bit of
+     *  KEY, so that any subset of its bits may be used to divide keys
+     *  evenly.  This is the finalizer of MurmurHash3. */
+    static long hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    /** Return the number of the first entry with key KEY in the chain
+     *  starting at entry I, or -1 if there is none. */
+    private int find(int i, long key) {
+        while (i != -1 && _keys[i] != key) {
+            i = _next[i];
+        }
+        return i;
+    }
+
+    /** Log base 2 of the largest number of slots. */
+    private static final int MAX_BITS = 30;
+
+    /** The rows of my entries. */
+    private final int[] _rows;
+    /** The keys of my entries. */
+    private final long[] _keys;
+    /** _heads[s] is the first entry in slot s, or -1 if there is none. */
+    private final int[] _heads;
+    /** _next[i] is the entry after entry i in its slot, or -1. */
+    private final int[] _next;
+    /** The number of slots, less 1. */
+    private final int _mask;
+}
@@ -0,0 +1,461 @@
+package db61b;
+
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+/** The plan for a select from one or more tables, which it executes as
+ *  a sequence of operators.  Each table is first scanned for the rows
+ *  satisfying the conditions that refer to it alone (see Table.scan).
+ *  The rows of two tables are then joined by whichever algorithm Join
+ *  chooses, and those of more tables by a JoinPlan, testing the
+ *  conditions that refer to several tables.  Last, the selected rows
+ *  are sorted and duplicates removed, and either built into a Table or
+ *  printed directly (see ViewBuilder).  Since the join order and
+ *  algorithm depend on how many rows of each table take part, the scans
+ *  are done before the rest of the select is planned, and so are
+ *  reported with their exact numbers of rows; the later operators
+ *  report estimates (see JoinPlan) until they have been executed.  A
+ *  plan that is only explained is never executed, so its tables are not
+ *  scanned: it is planned instead from estimates of the numbers of rows
+ *  the scans would produce (see estimateScan), made from only those
+ *  statistics and zone maps that already exist, and so may show a
+ *  different join order or algorithm than the select would use when
+ *  those estimates are poor.  As each operator runs, it records the
+ *  number of rows it produced, the time it took and the number of bytes
+ *  allocated by the thread running the select (not counting the work of
+ *  other threads, such as those of parallel scans and joins), for
+ *  explain.
+ *  @author Bo Bi
+ */
+class SelectPlan {
+
+    /** A plan for selecting the columns named COLUMNNAMES from the
+     *  combinations of rows, one from each of TABLES, that match on all
+     *  columns with identical names and satisfy CONDITIONS, whose
+     *  columns select from TABLES, in order (see Column).  NAMES are the
+     *  names of TABLES, and STATS their statistics (null where there are
+     *  none), which are used to choose the indices each table is scanned
+     *  with (see Table.usableIndices) and the order in which several
+     *  TABLES are joined. */
+    SelectPlan(List<String> names, List<Table> tables, List<TableStats> stats,
+               List<String> columnNames, List<Condition> conditions) {
+        int n = tables.size();
+        _names = names;
+        _tables = tables;
+        _stats = stats;
+        _columnNames = columnNames;
+        Table[] from = tables.toArray(new Table[n]);
+        _projection = new ArrayList<>();
+        for (String name : columnNames) {
+            _projection.add(new Column(name, from));
+        }
+
+        _cross = new ArrayList<>();
+        _local = new ArrayList<>();
+        for (int k = 0; k < n; k += 1) {
+            _local.add(new ArrayList<>());
+        }
+        for (Condition cond : conditions) {
+            int k = 0;
+            while (k < n && !cond.selectsFrom(k)) {
+                k += 1;
+            }
+            if (k < n) {
+                _local.get(k).add(cond);
+            } else {
+                _cross.add(cond);
+            }
+        }
+        _rows = new int[n][];
+    }
+
+    /** Scan each table for the rows that satisfy the conditions that
+     *  refer to it alone, and plan the rest of the select for the
+     *  numbers of rows found. */
+    private void scanAndPlan() {
+        int n = _tables.size();
+        _operators = new ArrayList<>();
+        int[] sizes = new int[n];
+        for (int k = 0; k < n; k += 1) {
+            Table table = _tables.get(k);
+            Operator scan = new Operator(describeScan(k), 0, Double.NaN);
+            scan.start();
+            if (!_local.get(k).isEmpty()) {
+                _rows[k] = table.scan(_local.get(k), _stats.get(k))
+                    .stream().toArray();
+            }
+            sizes[k] = _rows[k] == null ? table.size() : _rows[k].length;
+            scan.stop(sizes[k]);
+            scan._total = table.size();
+            _operators.add(scan);
+        }
+        plan(sizes);
+    }
+
+    /** Plan the select without scanning any table, taking the number of
+     *  rows each scan would produce to be its estimate (see
+     *  estimateScan). */
+    private void planFromEstimates() {
+        int n = _tables.size();
+        _operators = new ArrayList<>();
+        int[] sizes = new int[n];
+        for (int k = 0; k < n; k += 1) {
+            Table table = _tables.get(k);
+            Operator scan;
+            if (_local.get(k).isEmpty()) {
+                scan = new Operator(describeScan(k), 0, Double.NaN);
+                scan._rows = scan._total = sizes[k] = table.size();
+            } else {
+                double estimate = estimateScan(k);
+                scan = new Operator(describeScan(k), 0, estimate);
+                sizes[k] = (int) Math.round(estimate);
+            }
+            _operators.add(scan);
+        }
+        plan(sizes);
+    }
+
+    /** Return the estimated number of rows of the Kth table that satisfy
+     *  the conditions that refer to it alone, taking the conditions to
+     *  be independent, and judging each by the table's statistics if it
+     *  has any (see TableStats.selectivity) and otherwise by its zone
+     *  maps, if they have been computed (see Condition.zoneFraction). */
+    private double estimateScan(int k) {
+        TableStats stats = _stats.get(k);
+        double fraction = 1;
+        for (Condition cond : _local.get(k)) {
+            fraction *= stats == null ? cond.zoneFraction()
+                : stats.selectivity(cond);
+        }
+        return fraction * _tables.get(k).size();
+    }
+
+    /** Plan the joins and the final sort of the select, given that SIZES
+     *  are the numbers of rows of each table that take part, and add
+     *  their operators to those of the scans. */
+    private void plan(int[] sizes) {
+        int n = _tables.size();
+        double estimate = sizes[0];
+        if (n == 2) {
+            Table table1 = _tables.get(0), table2 = _tables.get(1);
+            ArrayList<String> common = new ArrayList<>();
+            ArrayList<Column> common1 = new ArrayList<>(),
+                common2 = new ArrayList<>();
+            for (int i = 0; i < table1.columns(); i += 1) {
+                String title = table1.getTitle(i);
+                if (table2.findColumn(title) != -1) {
+                    common.add(title);
+                    common1.add(new Column(title, table1));
+                    common2.add(new Column(title, table2));
+                }
+            }
+            _join = new Join(table1, _rows[0], table2, _rows[1],
+                             common1, common2);
+            estimate = new JoinPlan(_tables, _stats, sizes, _cross).estimate(1);
+            Join.Algorithm algorithm =
+                _join.algorithm(sizes[0], _local.get(0).isEmpty(),
+                                sizes[1], _local.get(1).isEmpty());
+            _joinOperator =
+                new Operator(describeJoin(algorithm.getName() + " of "
+                                          + _names.get(0) + " and "
+                                          + _names.get(1), common, _cross),
+                             0, estimate);
+            _operators.add(_joinOperator);
+        } else if (n > 2) {
+            _joinPlan = new JoinPlan(_tables, _stats, sizes, _cross);
+            estimate = _joinPlan.estimate(n - 1);
+            ArrayList<String> order = new ArrayList<>();
+            for (int s = 0; s < n; s += 1) {
+                order.add(_names.get(_joinPlan.tableAt(s)));
+            }
+            _joinOperator =
+                new Operator("pipelined join of " + String.join(", ", order),
+                             0, estimate);
+            _operators.add(_joinOperator);
+            _steps = new ArrayList<>();
+            for (int s = 1; s < n; s += 1) {
+                List<String> shared = _joinPlan.sharedColumns(s);
+                Operator step =
+                    new Operator(describeJoin((shared.isEmpty()
+                                               ? "nested loop join with "
+                                               : "hash join with ")
+                                              + order.get(s), shared,
+                                              _joinPlan.conditionsAt(s)),
+                                 1, _joinPlan.estimate(s));
+                _steps.add(step);
+                _operators.add(step);
+            }
+        }
+        _build = new Operator("sort and remove duplicates", 0, estimate);
+        _operators.add(_build);
+    }
+
+    /** Return a new Table containing the selected rows, as described
+     *  for ViewBuilder.build. */
+    Table execute() {
+        scanAndPlan();
+        ViewBuilder result = join();
+        _build.start();
+        addScanned(result);
+        Table table = result.build();
+        _build.stop(table.size());
+        return table;
+    }
+
+    /** Print the selected rows on OUT in the format of Table.print,
+     *  without first building a Table to hold them (see
+     *  ViewBuilder.print). */
+    void print(PrintWriter out) {
+        scanAndPlan();
+        ViewBuilder result = join();
+        _build.start();
+        addScanned(result);
+        _build.stop(result.print(out));
+    }
+
+    /** Return a ViewBuilder for the selected rows, to which the
+     *  combinations of rows that satisfy my conditions have been added if
+     *  there are several tables (see addScanned). */
+    private ViewBuilder join() {
+        int n = _tables.size();
+        ViewBuilder result = new ViewBuilder(_columnNames, _projection);
+        if (n == 2) {
+            _joinOperator.start();
+            long[] pairs = new long[1];
+            _join.run((i, j) -> {
+                if (Condition.test(_cross, i, j)) {
+                    result.add(i, j);
+                    pairs[0] += 1;
+                }
+            });
+            _joinOperator.stop(pairs[0]);
+        } else if (n > 2) {
+            _joinOperator.start();
+            int[][] rows = new int[n][];
+            for (int k = 0; k < n; k += 1) {
+                rows[k] = _rows[k] == null ? allRows(_tables.get(k))
+                    : _rows[k];
+            }
+            _joinPlan.run(rows, result::add);
+            for (int s = 1; s < n; s += 1) {
+                _steps.get(s - 1)._rows = _joinPlan.produced(s);
+            }
+            _joinOperator.stop(_joinPlan.produced(n - 1));
+        }
+        return result;
+    }
+
+    /** Add the rows selected from my only table, if I have only one, to
+     *  RESULT. */
+    private void addScanned(ViewBuilder result) {
+        if (_tables.size() == 1) {
+            if (_rows[0] == null) {
+                for (int k = 0; k < _tables.get(0).size(); k += 1) {
+                    result.add(k);
+                }
+            } else {
+                for (int k : _rows[0]) {
+                    result.add(k);
+                }
+            }
+        }
+    }
+
+    /** Print my operators on the standard output, one per line in the
+     *  order in which they run, with their estimated numbers of rows.
+     *  If ANALYZE, first execute me and also print the actual numbers of
+     *  rows, times and allocations; otherwise, plan me without scanning
+     *  my tables (see planFromEstimates). */
+    void explain(boolean analyze) {
+        if (analyze) {
+            execute();
+        } else {
+            planFromEstimates();
+        }
+        for (Operator operator : _operators) {
+            System.out.println(operator.format(analyze));
+        }
+    }
+
+    /** Return a description of the scan of my Kth table for the rows
+     *  satisfying the conditions that refer to it alone, including the
+     *  indices it uses. */
+    private String describeScan(int k) {
+        String name = _names.get(k);
+        Table table = _tables.get(k);
+        List<Condition> conditions = _local.get(k);
+        StringBuilder result = new StringBuilder();
+        if (!conditions.isEmpty() && table.scansInParallel()) {
+            result.append("parallel ");
+        }
+        result.append("scan ").append(name);
+        ArrayList<String> indices = new ArrayList<>();
+        for (Index index : table.usableIndices(conditions, _stats.get(k))) {
+            indices.add(index.getName());
+        }
+        if (!indices.isEmpty()) {
+            result.append(" using index ").append(String.join(", ", indices));
+        }
+        return result.append(where(conditions)).toString();
+    }
+
+    /** Return a description of the join named JOIN on the columns named
+     *  COMMON, also testing CONDITIONS. */
+    private static String describeJoin(String join, List<String> common,
+                                       List<Condition> conditions) {
+        if (!common.isEmpty()) {
+            join += " on " + String.join(", ", common);
+        }
+        return join + where(conditions);
+    }
+
+    /** Return a where clause testing CONDITIONS, preceded by a blank, or
+     *  an empty string if there are none. */
+    private static String where(List<Condition> conditions) {
+        if (conditions.isEmpty()) {
+            return "";
+        }
+        ArrayList<String> tests = new ArrayList<>();
+        for (Condition cond : conditions) {
+            tests.add(cond.toString());
+        }
+        return " where " + String.join(" and ", tests);
+    }
+
+    /** Return the stored positions of all rows of TABLE. */
+    private static int[] allRows(Table table) {
+        int[] rows = new int[table.size()];
+        for (int k = 0; k < rows.length; k += 1) {
+            rows[k] = k;
+        }
+        return rows;
+    }
+
+    /** Return the number of bytes allocated so far by the current
+     *  thread, or -1 if the JVM cannot tell. */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads)
+                .getCurrentThreadAllocatedBytes();
+        }
+        return -1;
+    }
+
+    /** One step in the execution of a select, and what it did when it
+     *  was last run. */
+    private static class Operator {
+
+        /** An operator described by DESCRIPTION, which is part of that
+         *  printed DEPTH levels above it, and is expected to produce
+         *  ESTIMATE rows (NaN if the number is known exactly once it
+         *  has been planned). */
+        Operator(String description, int depth, double estimate) {
+            _description = description;
+            _depth = depth;
+            _estimate = estimate;
+        }
+
+        /** Record that I am starting to run. */
+        void start() {
+            _bytes = allocatedBytes();
+            _nanos = System.nanoTime();
+        }
+
+        /** Record that I have finished running, producing ROWS rows. */
+        void stop(long rows) {
+            _nanos = System.nanoTime() - _nanos;
+            long bytes = allocatedBytes();
+            _bytes = bytes == -1 || _bytes == -1 ? -1 : bytes - _bytes;
+            _rows = rows;
+        }
+
+        /** Return a line describing me, with my estimated or exact
+         *  number of rows and, if ANALYZE, what I did when last run. */
+        String format(boolean analyze) {
+            StringBuilder line = new StringBuilder("  ");
+            for (int d = 0; d < _depth; d += 1) {
+                line.append("  ");
+            }
+            line.append(_description).append(": ");
+            if (Double.isNaN(_estimate)) {
+                line.append(_rows);
+                if (_total != _rows) {
+                    line.append(" of ").append(_total);
+                }
+                line.append(" rows");
+            } else if (analyze && _rows != -1) {
+                line.append(String.format("estimated %d, actual %d rows",
+                                          Math.round(_estimate), _rows));
+            } else {
+                line.append(String.format("estimated %d rows",
+                                          Math.round(_estimate)));
+            }
+            if (analyze && _nanos != -1) {
+                line.append(String.format(" (%.3f ms", _nanos / 1e6));
+                if (_bytes != -1) {
+                    line.append(String.format(", %d bytes allocated",
+                                              _bytes));
+                }
+                line.append(")");
+            }
+            return line.toString();
+        }
+
+        /** My description. */
+        private final String _description;
+        /** The number of levels of operators of which I am part. */
+        private final int _depth;
+        /** The estimated number of rows I produce, or NaN if none. */
+        private final double _estimate;
+        /** The number of rows I produced, or -1 if I have not run. */
+        private long _rows = -1;
+        /** For a scan, the number of rows of the table scanned. */
+        private long _total = -1;
+        /** The time I took to run, in nanoseconds, or -1 if I have not
+         *  been timed. */
+        private long _nanos = -1;
+        /** The number of bytes allocated while I ran, or -1 if
+         *  unknown. */
+        private long _bytes = -1;
+    }
+
+    /** The names of the tables selected from. */
+    private final List<String> _names;
+    /** The tables selected from. */
+    private final List<Table> _tables;
+    /** The statistics of each of _tables, or null where there are
+     *  none. */
+    private final List<TableStats> _stats;
+    /** The names of the selected columns. */
+    private final List<String> _columnNames;
+    /** The selected columns. */
+    private final ArrayList<Column> _projection;
+    /** The conditions that refer to more than one table. */
+    private final List<Condition> _cross;
+    /** _local.get(k) holds the conditions that refer to the kth table
+     *  alone. */
+    private final List<List<Condition>> _local;
+    /** _rows[k] holds the stored positions of the rows of the kth table
+     *  that satisfy the conditions that refer to it alone, in increasing
+     *  order, or is null if there are no such conditions. */
+    private final int[][] _rows;
+    /** The join of two tables, if there are two. */
+    private Join _join;
+    /** The plan for joining more than two tables, if there are more. */
+    private JoinPlan _joinPlan;
+    /** The operators, in the order in which they run and are printed,
+     *  once I have been planned. */
+    private List<Operator> _operators;
+    /** The operator that joins the tables, if there are several. */
+    private Operator _joinOperator;
+    /** The steps of _joinPlan after the first, which are part of
+     *  _joinOperator. */
+    private List<Operator> _steps;
+    /** The final operator, which sorts the rows and removes
+     *  duplicates. */
+    private Operator _build;
+}
@@ -0,0 +1,45 @@
+package db61b;
+
+import java.util.ArrayList;
+
+/** A ValueList that simply holds a reference to each value.
+ *  @author Bo Bi
+ */
+class StringValueList extends ValueList {
+
+    /** An empty list. */
+    StringValueList() {
+        _values = new ArrayList<>();
+    }
+
+    /** A list containing the values of VALUES, in order. */
+    StringValueList(ValueList values) {
+        _values = new ArrayList<>(values.size());
+        for (int k = 0; k < values.size(); k += 1) {
+            _values.add(values.get(k));
+        }
+    }
+
+    @Override
+    int size() {
+        return _values.size();
+    }
+
+    @Override
+    String get(int k) {
+        return _values.get(k);
+    }
+
+    @Override
+    void add(String value) {
+        _values.add(value);
+    }
+
+    @Override
+    ValueList snapshot() {
+        return new StringValueList(this);
+    }
+
+    /** My values. */
+    private final ArrayList<String> _values;
+}
@@ -1,15 +1,16 @@
 package db61b;
 
-import java.io.BufferedReader;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.IOException;
-import java.io.PrintStream;
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import static db61b.Utils.error;
+import static db61b.Utils.standardOutput;
 
 /**
  * A single table in a database.
@@ -20,9 +21,13 @@ class Table {
 
     /**
      * A new Table whose columns are given by COLUMNTITLES, which may
-     * not contain duplicate names.
+     * not contain duplicate names, and hold values of the corresponding
+     * TYPES.  If DECLARED, the types are fixed and adding a value that
+     * does not fit its column's type is an error.  Otherwise, the types
+     * are merely the narrowest known to fit, and such a value widens
+     * its column's type to one that fits it.
      */
-    Table(String[] columnTitles) {
+    Table(String[] columnTitles, Type[] types, boolean declared) {
         if (columnTitles.length == 0) {
             throw error("table must have at least one column");
         }
@@ -39,17 +44,69 @@ class Table {
         }
 
         _titles = columnTitles;
+        _declared = declared;
         _columns = new ValueList[_titles.length];
+        _zoneMaps = new ZoneMap[_titles.length];
         for (int i = 0; i < columns(); i++) {
-            _columns[i] = new ValueList();
+            _columns[i] = types[i].newValueList();
+            _zoneMaps[i] = new ZoneMap();
+        }
+    }
+
+    /**
+     * A new Table whose columns are given by COLUMNTITLES and contain
+     * COLUMNS, which must all have the same size, and whose rows must
+     * be distinct and already stored in lexicographic order.  Used to
+     * open a table in columnar storage (see ColumnarFile) and to build
+     * one in bulk (see TableBuilder and ViewBuilder) without re-sorting
+     * or re-checking its rows.  ZONEMAPS, if not null, are the zone maps
+     * of COLUMNS; otherwise, each is computed when first needed.
+     */
+    Table(String[] columnTitles, ValueList[] columns, ZoneMap[] zoneMaps) {
+        this(columnTitles, valueTypes(columns), false);
+        for (int i = 0; i < columns.length; i += 1) {
+            _columns[i] = columns[i];
+            _zoneMaps[i] = zoneMaps == null ? null : zoneMaps[i];
         }
+        _size = columns[0].size();
+        _index = null;
+        _rowHashes = null;
+    }
+
+    /**
+     * A new Table whose columns are given by COLUMNTITLES and contain
+     * COLUMNS, as for Table(COLUMNTITLES, COLUMNS, null).
+     */
+    Table(String[] columnTitles, ValueList[] columns) {
+        this(columnTitles, columns, null);
+    }
+
+    /**
+     * A new Table whose columns are given by COLUMNTITLES and hold
+     * strings.
+     */
+    Table(String[] columnTitles) {
+        this(columnTitles, stringTypes(columnTitles.length), false);
     }
 
     /**
-     * A new Table whose columns are give by COLUMNTITLES.
+     * Return an array of N STRING types.
      */
-    Table(List<String> columnTitles) {
-        this(columnTitles.toArray(new String[columnTitles.size()]));
+    private static Type[] stringTypes(int n) {
+        Type[] types = new Type[n];
+        Arrays.fill(types, Type.STRING);
+        return types;
+    }
+
+    /**
+     * Return the types of the values in COLUMNS.
+     */
+    private static Type[] valueTypes(ValueList[] columns) {
+        Type[] types = new Type[columns.length];
+        for (int i = 0; i < types.length; i += 1) {
+            types[i] = columns[i].getType();
+        }
+        return types;
     }
 
     /**
@@ -66,6 +123,13 @@ class Table {
         return _titles[k];
     }
 
+    /**
+     * Return the type of the values in the Kth column.
+     */
+    Type getType(int k) {
+        return _columns[k].getType();
+    }
+
     /**
      * Return the number of the column whose title is TITLE, or -1 if
      * there isn't one.
@@ -94,53 +158,88 @@ class Table {
      */
     public String get(int row, int col) {
         try {
-            return _columns[col].get(row);
+            return _columns[col].get(storedRow(row));
         } catch (IndexOutOfBoundsException excp) {
             throw error("invalid row or column");
         }
     }
 
     /**
-     * Returns the index based on lexographic position when comparing
-     * VALUES.
-     */
-    public int lexographic(String[] values) {
-        int result = 0;
-        if (this.size() < 1) {
-            result = 0;
-        }
-        loop:
-        for (int i = 0; i < this.size(); i++) {
-            if (values[0].compareTo(this.get(i, 0)) < 0) {
-                result = i;
-                break loop;
-            } else if (values[0].compareTo(this.get(i, 0)) == 0) {
-                int j = 1;
-                while (j < this.columns()) {
-                    int l = i;
-                    while (l < this.size()) {
-                        if (values[j].compareTo(this.get(l, j)) < 0) {
-                            result = l;
-                            break loop;
-                        } else if (values[j].compareTo(this.get(i, j)) > 0) {
-                            if (l == this.size() - 1
-                                    || values[0].compareTo(this.get(l + 1, 0))
-                                    != 0) {
-                                result = l + 1;
-                                break loop;
-                            } else {
-                                l++;
-                            }
-                        } else {
-                            j++;
-                        }
-                    }
-                }
-            } else {
-                result = this.size();
+     * Return the value of column number COL of the row stored at
+     * position K of my columns (0 <= K < size()).  Rows are stored in
+     * the order they were added, so unlike ROW in get, K ignores the
+     * _index.  Positions never change once assigned, which makes them
+     * suitable for use by Columns, Conditions, and Indices.
+     */
+    String value(int k, int col) {
+        return _columns[col].get(k);
+    }
+
+    /**
+     * Return the values of my column number COL, indexed by stored
+     * position.
+     */
+    ValueList values(int col) {
+        return _columns[col];
+    }
+
+    /**
+     * Return the zone map of my column number COL.
+     */
+    ZoneMap zoneMap(int col) {
+        if (_zoneMaps[col] == null) {
+            _zoneMaps[col] = new ZoneMap(_columns[col]);
+        }
+        return _zoneMaps[col];
+    }
+
+    /**
+     * Return the zone map of my column number COL if it has been
+     * computed, and otherwise null.
+     */
+    ZoneMap builtZoneMap(int col) {
+        return _zoneMaps[col];
+    }
+
+    /**
+     * Return the position in my columns of record number ROW in
+     * lexicographic order (0 <= ROW < size()).
+     */
+    int storedRow(int row) {
+        return _index == null ? row : _index.get(row);
+    }
+
+    /**
+     * Return my indices.
+     */
+    List<Index> getIndices() {
+        return _indices;
+    }
+
+    /**
+     * Add an index named NAME on my column named COLUMNNAME: an
+     * OrderedIndex if ORDERED, and otherwise a HashIndex.
+     */
+    void createIndex(String name, String columnName, boolean ordered) {
+        int col = findColumn(columnName);
+        if (col == -1) {
+            throw error("unknown column: %s", columnName);
+        }
+        for (Index index : _indices) {
+            if (index.getName().equals(name)) {
+                throw error("duplicate index name: %s", name);
             }
         }
-        return result;
+        Index index;
+        if (ordered) {
+            index = new OrderedIndex(name, this, col);
+        } else {
+            index = new HashIndex(name, this, col);
+        }
+        for (int k = 0; k < size(); k += 1) {
+            index.add(k);
+        }
+        _indices.add(index);
     }
 
     /**
@@ -152,92 +251,162 @@ class Table {
         if (values.length != this.columns()) {
             throw error("Not Same Length");
         }
-        int count = 0;
-        String[] one = new String[this.columns()];
-        if (this.size() == 0) {
-            for (int i = 0; i < this.columns(); i++) {
-                _columns[i].add(values[i]);
+        unpack();
+        for (int i = 0; i < this.columns(); i++) {
+            if (!getType(i).accepts(values[i])) {
+                if (_declared) {
+                    throw error("'%s' is not a valid %s value for %s",
+                                values[i], getType(i).getName(),
+                                getTitle(i));
+                }
+                widen(i, values[i]);
             }
-            _size += 1;
-            return true;
+        }
+        int hash = Arrays.hashCode(values);
+        ArrayList<Integer> candidates = _rowHashes.get(hash);
+        if (candidates == null) {
+            candidates = new ArrayList<>(1);
+            _rowHashes.put(hash, candidates);
         } else {
-            for (int i = 0; i < this.size(); i++) {
-                for (int j = 0; j < this.columns(); j++) {
-                    one[j] = this.get(i, j);
-                    if (j == (this.columns() - 1)) {
-                        if (!Arrays.equals(one, values)) {
-                            count += 1;
-                        }
-                    }
+            for (int k : candidates) {
+                if (rowEquals(k, values)) {
+                    return false;
                 }
             }
         }
-        if (count == this.size()) {
-            int index = lexographic(values);
-            for (int i = 0; i < this.columns(); i++) {
-                _columns[i].add(index, values[i]);
+        int k = _size;
+        for (int i = 0; i < this.columns(); i++) {
+            ZoneMap zoneMap = zoneMap(i);
+            _columns[i] = _columns[i].mutable();
+            _columns[i].add(values[i]);
+            _columns[i] = _columns[i].adapt();
+            zoneMap.add(_columns[i], k);
+        }
+        candidates.add(k);
+        _index.add(insertionPoint(k), k);
+        _size += 1;
+        for (Index index : _indices) {
+            index.add(k);
+        }
+        return true;
+    }
+
+    /**
+     * Create _index and _rowHashes if they are not yet present.  If
+     * _index is not present, my rows are stored in lexicographic order.
+     */
+    private void unpack() {
+        if (_rowHashes != null) {
+            return;
+        }
+        if (_index == null) {
+            _index = new ArrayList<>(_size);
+            for (int k = 0; k < _size; k += 1) {
+                _index.add(k);
             }
-            _size += 1;
-            return true;
-        } else {
-            return false;
+        }
+        _rowHashes = new HashMap<>();
+        String[] row = new String[columns()];
+        for (int k = 0; k < _size; k += 1) {
+            for (int i = 0; i < row.length; i += 1) {
+                row[i] = _columns[i].get(k);
+            }
+            int hash = Arrays.hashCode(row);
+            ArrayList<Integer> candidates = _rowHashes.get(hash);
+            if (candidates == null) {
+                candidates = new ArrayList<>(1);
+                _rowHashes.put(hash, candidates);
+            }
+            candidates.add(k);
         }
     }
 
+    /**
+     * Return a Table with my current titles and rows that is unaffected
+     * by later changes to me, and that another thread may read while I
+     * am being changed.  It has none of my indices, and copies only
+     * those of my zone maps that have been built.
+     */
+    Table snapshot() {
+        ValueList[] columns = new ValueList[columns()];
+        ZoneMap[] zoneMaps = new ZoneMap[columns()];
+        for (int i = 0; i < columns.length; i += 1) {
+            columns[i] = _columns[i].snapshot();
+            zoneMaps[i] =
+                _zoneMaps[i] == null ? null : _zoneMaps[i].snapshot();
+        }
+        Table result = new Table(_titles, columns, zoneMaps);
+        if (_index != null) {
+            result._index = new ArrayList<>(_index);
+        }
+        return result;
+    }
 
     /**
-     * Add a new row whose column values are extracted by COLUMNS from
-     * the rows indexed by ROWS, if no equal row already exists.
-     * Return true if anything was added, false otherwise. See
-     * Column.getFrom(Integer...) for a description of how Columns
-     * extract values.
+     * Change the type of column COL to the narrowest one wider than its
+     * current type that accepts VALUE, converting its existing values
+     * and rebuilding my order of rows, the column's zone map, and any
+     * indices on the column according to the new type's order.
      */
-    public boolean add(List<Column> columns, Integer... rows) {
-        /* Create ArrayList to store each column of the table as an array */
-        String[] one = new String[columns()];
-        for (int i = 0; i < columns.size(); i++) {
-            one[i] = columns.get(i).getFrom(rows);
+    private void widen(int col, String value) {
+        Type type = getType(col).wider();
+        while (!type.accepts(value)) {
+            type = type.wider();
+        }
+        ValueList old = _columns[col];
+        _columns[col] = type.newValueList();
+        for (int k = 0; k < _size; k += 1) {
+            _columns[col].add(old.get(k));
+        }
+        _zoneMaps[col] = new ZoneMap(_columns[col]);
+        _index.sort(this::compareRows);
+        for (Index index : _indices) {
+            if (index.getColumn() == col) {
+                index.clear();
+                for (int k = 0; k < _size; k += 1) {
+                    index.add(k);
+                }
+            }
         }
-        return add(one);
     }
 
+    /**
+     * Return the position in _index at which the row stored at
+     * position K of my columns belongs, found by binary search over
+     * the rows already in _index.
+     */
+    private int insertionPoint(int k) {
+        int lo = 0, hi = _index.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareRows(_index.get(mid), k) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Return true iff the row stored at position K of my columns
+     * has exactly the values VALUES.
+     */
+    private boolean rowEquals(int k, String[] values) {
+        for (int i = 0; i < _columns.length; i += 1) {
+            if (!_columns[i].matches(k, values[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
 
     /**
      * Read the contents of the file NAME.db, and return as a Table.
      * Format errors in the .db file cause a DBException.
      */
     static Table readTable(String name) {
-        BufferedReader input;
-        Table table;
-        input = null;
-        try {
-            input = new BufferedReader(new FileReader(name + ".db"));
-            String header = input.readLine();
-            if (header == null) {
-                throw error("missing header in DB file");
-            }
-            String[] columnNames = header.split(",");
-            table = new Table(columnNames);
-            String container = input.readLine();
-            while (container != null) {
-                String[] array = container.split(",");
-                table.add(array);
-                container = input.readLine();
-            }
-        } catch (FileNotFoundException e) {
-            throw error("could not find %s.db", name);
-        } catch (IOException e) {
-            throw error("problem reading from %s.db", name);
-        } finally {
-            if (input != null) {
-                try {
-                    input.close();
-                } catch (IOException e) {
-                    /* Ignore IOException */
-                }
-            }
-        }
-        return table;
+        return DBFile.read(name);
     }
 
     /**
@@ -245,37 +414,7 @@ class Table {
      * cause a DBException.
      */
     void writeTable(String name) {
-        PrintStream output;
-        output = null;
-        try {
-            String sep;
-            sep = "";
-            output = new PrintStream(name + ".db");
-            for (int i = 0; i < this.columns(); i++) {
-                if (i == this.columns() - 1) {
-                    output.print(this.getTitle(i));
-                } else {
-                    output.print(this.getTitle(i) + ",");
-                }
-            }
-            output.println();
-            for (int i = 0; i < this.size(); i++) {
-                for (int j = 0; j < this.columns(); j++) {
-                    if (j == this.columns() - 1) {
-                        output.print(this.get(i, j));
-                    } else {
-                        output.print(this.get(i, j) + ",");
-                    }
-                }
-                output.println();
-            }
-        } catch (IOException e) {
-            throw error("trouble writing to %s.db", name);
-        } finally {
-            if (output != null) {
-                output.close();
-            }
-        }
+        DBFile.write(this, name);
     }
 
     /**
@@ -283,205 +422,142 @@ class Table {
      * and indented by two spaces.
      */
     void print() {
-        String[] container = new String[columns()];
-        for (int i = 0; i < this.size(); i++) {
-            for (int j = 0; j < this.columns(); j++) {
-                container[j] = this.get(i, j).trim();
-            }
-            StringBuilder create = new StringBuilder();
-            for (String value : container) {
-                create.append(" " + value);
+        PrintWriter out = standardOutput();
+        for (int i = 0; i < size(); i += 1) {
+            out.print(' ');
+            for (int j = 0; j < columns(); j += 1) {
+                out.print(' ');
+                out.print(get(i, j).trim());
             }
-            String text = create.toString();
-            System.out.println(" " + text);
+            out.println();
         }
+        out.flush();
     }
 
-    /**Filters and Returns specific columnNames that are similar to
-     * COLUMNNAMES. **/
-    public List<String> columnnamefilter(List<String> columnNames) {
-        List<String> newstring = new ArrayList<>();
-        for (int i = 0; i < columnNames.size(); i++) {
-            for (int j = 0; j < this.columns(); j++) {
-                if (this.getTitle(j).equals(columnNames.get(i))) {
-                    newstring.add(columnNames.get(i));
-                }
-            }
+    /**
+     * Return the set of stored positions of my rows that satisfy all of
+     * CONDITIONS, which must apply to me alone.  Starts with the rows
+     * allowed by each of my indices chosen by usableIndices, given
+     * STATS, and then removes those that fail each condition in turn,
+     * so that each condition examines only rows that have passed all
+     * before it.  When scansInParallel, the rows are divided into
+     * ranges of whole zone-map blocks that are filtered by the threads
+     * of the common fork/join pool.
+     */
+    BitSet scan(List<Condition> conditions, TableStats stats) {
+        BitSet allowed = indexFilter(conditions, stats);
+        if (!scansInParallel()) {
+            return filter(conditions, allowed, 0, size());
         }
-        return newstring;
-    }
-    /** Returns specific rows based on COLUMNNAMES, CONDITIONS.**/
-    public List<Integer> conditions(List<String> columnNames,
-                                    List<Condition> conditions) {
-        List<Integer> rows = new ArrayList<Integer>();
-        for (int l = 0; l < conditions.size(); l++) {
-            if (conditions.get(l).check(columnNames)) {
-                for (int j = 0; j < conditions.size(); j++) {
-                    for (int q = 0; q < size(); q++) {
-                        if (conditions.get(j).test(q)) {
-                            rows.add(q);
-                        }
-                    }
-                }
+
+        for (Condition cond : conditions) {
+            cond.compile();
+        }
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        int step = ZoneMap.BLOCK_SIZE
+            * Math.max(1, size() / (4 * parallelism * ZoneMap.BLOCK_SIZE));
+        ArrayList<ForkJoinTask<BitSet>> tasks = new ArrayList<>();
+        for (int from = 0; from < size(); from += step) {
+            int start = from, end = Math.min(size(), from + step);
+            tasks.add(ForkJoinPool.commonPool().submit(
+                () -> filter(conditions, allowed, start, end)));
+        }
+        BitSet rows = new BitSet(size());
+        for (int t = 0; t < tasks.size(); t += 1) {
+            BitSet part = tasks.get(t).join();
+            for (int i = part.nextSetBit(0); i >= 0;
+                 i = part.nextSetBit(i + 1)) {
+                rows.set(t * step + i);
             }
         }
         return rows;
     }
 
     /**
-     * Return a new Table whose columns are COLUMNNAMES, selected from
-     * rows of this table that satisfy CONDITIONS.
+     * Return true iff scan divides its work among several threads.
      */
-    Table select(List<String> columnNames, List<Condition> conditions) {
-        Table result = new Table(columnNames);
-        List<Integer> index = new ArrayList<Integer>();
-        List<String> names = listcreator(this);
-        List<String> final1 = new ArrayList<>();
-        if (names.containsAll(columnNames)) {
-            String[] values = new String[columnNames.size()];
-            for (int i = 0; i < columnNames.size(); i++) {
-                index.add(findColumn(columnNames.get(i)));
-            }
-            for (int l = 0; l < this.size(); l++) {
-                if (Condition.test(conditions, l)) {
-                    for (int k = 0; k < index.size(); k++) {
-                        for (int m = 0; m < this.columns(); m++) {
-                            if (m == index.get(k)) {
-                                values[k] = this.get(l, m);
-                            }
-
-                        }
-                    }
-                    result.add(values);
-                }
-            }
-        } else {
-            int count = 0;
-            for (int i = 0; i < columnNames.size(); i++) {
-                for (int j = 0; j < names.size(); j++) {
-                    if (columnNames.get(i).equals(names.get(i))) {
-                        count++;
-                    }
-                }
-                if (count == 0) {
-                    final1.add(columnNames.get(i));
-                }
-            }
-            String res = String.join("", final1);
-            throw error("Error: unknown column:" + " " + res);
-        }
-        return result;
+    boolean scansInParallel() {
+        return size() >= PARALLEL_SELECT_THRESHOLD
+            && ForkJoinPool.getCommonPoolParallelism() > 1;
     }
 
-    /**Returns columns based on TABLE and NAMES based on if equijoin is true.**/
-    public ArrayList<Column> columngenerator(Table table, List<String> names) {
-        ArrayList<Column> columns = new ArrayList<>();
-        for (int i = 0; i < names.size(); i++) {
-            columns.add(new Column(names.get(i), table));
+    /**
+     * Return the set of those of my rows stored at positions FROM to TO
+     * that satisfy CONDITIONS, which apply to me alone, and are in
+     * ALLOWED, unless it is null.  The set contains each such row's
+     * position less FROM.
+     */
+    private BitSet filter(List<Condition> conditions, BitSet allowed,
+                          int from, int to) {
+        BitSet rows;
+        if (allowed == null) {
+            rows = new BitSet(to - from);
+            rows.set(0, to - from);
+        } else {
+            rows = allowed.get(from, to);
+        }
+        for (Condition cond : conditions) {
+            cond.filter(rows, from);
         }
-        return columns;
+        return rows;
     }
 
-    /**Returns a table RESULT built by multiple paramaters such as
-     * STRING, ONE, TABLE, TABLEROW, THISCOL, and COLUMNNAMES. **/
-    public void builder(String[] string, Table one, Table table, Table result,
-                        int tablerow, int thiscol, List<String> columnNames) {
-        int i = 0;
-        while (i < columnNames.size()) {
-            if (one.findColumn(columnNames.get(i)) != -1) {
-                for (int j = 0; j < one.columns(); j++) {
-                    if (one.getTitle(j).equals(columnNames.get(i))) {
-                        string[i] = one.get(tablerow, j);
-                    }
-                }
-                i++;
-            } else if (table.findColumn(columnNames.get(i)) != -1) {
-                for (int j = 0; j < table.columns(); j++) {
-                    if (table.getTitle(j).equals(columnNames.get(i))) {
-                        string[i] = table.get(thiscol, j);
+    /**
+     * Return those of my indices that scan uses to narrow down the rows
+     * satisfying CONDITIONS, given STATS, my statistics, or null if I
+     * have none.  Collecting the rows an index finds costs more per row
+     * than testing a condition on each of my rows, so an index is
+     * skipped when STATS estimates (see TableStats.selectivity) that
+     * more than INDEX_SELECTIVITY_LIMIT of my rows satisfy the
+     * conditions it answers.  Without statistics, every index that
+     * answers any of CONDITIONS is used.
+     */
+    List<Index> usableIndices(List<Condition> conditions, TableStats stats) {
+        ArrayList<Index> result = new ArrayList<>();
+        for (Index index : _indices) {
+            boolean answers = false;
+            double fraction = 1;
+            for (Condition cond : conditions) {
+                if (index.answers(cond)) {
+                    answers = true;
+                    if (stats != null) {
+                        fraction *= stats.selectivity(cond);
                     }
                 }
-                i++;
             }
-        }
-        result.add(string);
-    }
-    /**
-     * Return a new Table whose columns are COLUMNNAMES, selected
-     * from pairs of rows from this table and from TABLE2 that match
-     * on all columns with identical names and satisfy CONDITIONS.
-     */
-    Table select2(Table table2,
-                  List<String> columnNames, List<Condition> conditions) {
-        Table result = new Table(columnNames);
-        List<String> titlesfromthis =
-                listcreator(this);
-        List<String> titlesfromtable =
-                listcreator(table2);
-        List<String> combined = new ArrayList<>(titlesfromthis);
-        combined.retainAll(titlesfromtable);
-        String[] container = new String[columnNames.size()];
-        ArrayList<Column> columnsfromthis = columngenerator(this, combined);
-        ArrayList<Column> columnsfromtable = columngenerator(table2, combined);
-        for (int i = 0; i < this.size(); i++) {
-            for (int j = 0; j < table2.size(); j++) {
-                if ((equijoin(columnsfromthis, columnsfromtable, i, j))
-                        && (Condition.test(conditions, i, j))) {
-                    builder(container, this,
-                            table2, result, i, j, columnNames);
-                }
+            if (answers && (stats == null
+                            || fraction <= INDEX_SELECTIVITY_LIMIT)) {
+                result.add(index);
             }
         }
         return result;
     }
 
-
-        /*if (!compareTitles(table2)){
-            resulting = outerjoin(table2,columnNames, conditions);
-        } else {
-            List<String> names = new ArrayList<String>(columnNames);
-            if (!containsname(columnNames)) {
-                names.add(0, getTitle(0));
-            }
-            Table filtered1 = select(names, conditions);
-            Table filtered2 = table2.select(names, conditions);
-            List<String> checker_table1 = new ArrayList<String>();
-            List<String> checker_table2 = new ArrayList<String>();
-            if (filtered1.size() > 0) {
-                for (int i = 0; i < filtered1.size(); i++) {
-                    checker_table1.add(filtered1.get(i, 0));
+    /**
+     * Return the set of stored positions of my rows allowed by every one
+     * of my indices that usableIndices chooses for CONDITIONS and STATS,
+     * or null if it chooses none.
+     */
+    private BitSet indexFilter(List<Condition> conditions,
+                               TableStats stats) {
+        BitSet rows = null;
+        for (Index index : usableIndices(conditions, stats)) {
+            List<Integer> found = index.find(conditions);
+            if (found != null) {
+                BitSet allowed = new BitSet(size());
+                for (int k : found) {
+                    allowed.set(k);
                 }
-            }
-            if (filtered2.size() > 0) {
-                for (int i = 0; i < filtered2.size(); i++) {
-                    checker_table2.add(filtered2.get(i, 0));
+                if (rows == null) {
+                    rows = allowed;
+                } else {
+                    rows.and(allowed);
                 }
             }
-            List<String> common = new ArrayList<String>(checker_table1);
-            common.retainAll(checker_table1);
-            if (filtered1.size() == 0) {
-                Table new_filtered = filter(names, checker_table2);
-                resulting = addcolumns(filtered2, new_filtered, columnNames);
-                resulting.print();
-            } else if (filtered2.size() == 0) {
-                Table newtable = table2.filter(names, checker_table1);
-                resulting = addcolumns(newtable, filtered1, columnNames);
-            } else {
-                Table filteredone = filter(names, common);
-                Table filteredtwo = table2.filter(names, common);
-                resulting = addcolumns(filteredone, filteredtwo, columnNames);
-                */
-
-    /** Returns a list of columnnames based on the table ONE given.**/
-    public List<String> listcreator(Table one) {
-        List<String> checker = new ArrayList<String>();
-        for (int i = 0; i < one.columns(); i++) {
-            checker.add(one.getTitle(i));
         }
-        return checker;
+        return rows;
     }
 
-
     /**
      * Return <0, 0, or >0 depending on whether the row formed from
      * the elements _columns[0].get(K0), _columns[1].get(K0), ...
@@ -491,7 +567,7 @@ class Table {
      */
     private int compareRows(int k0, int k1) {
         for (int i = 0; i < _columns.length; i += 1) {
-            int c = _columns[i].get(k0).compareTo(_columns[i].get(k1));
+            int c = _columns[i].compare(k0, k1);
             if (c != 0) {
                 return c;
             }
@@ -500,37 +576,18 @@ class Table {
     }
 
     /**
-     * Return true if the columns COMMON1 from ROW1 and COMMON2 from
-     * ROW2 all have identical values.  Assumes that COMMON1 and
-     * COMMON2 have the same number of elements and the same names,
-     * that the columns in COMMON1 apply to this table, those in
-     * COMMON2 to another, and that ROW1 and ROW2 are indices, respectively,
-     * into those tables.
+     * Smallest number of rows for which scan divides its work among
+     * the threads of the common fork/join pool, which may be changed by
+     * setting the system property db61b.parallelSelectThreshold.
      */
-    public static boolean equijoin(List<Column> common1, List<Column> common2,
-                                   int row1, int row2) {
-        for (int i = 0; i < common1.size(); i++) {
-            if (!common1.get(i).getFrom(row1).
-                    equals(common2.get(i).getFrom(row2))) {
-                return false;
-            }
-        }
-        return true;
-    }
+    static final int PARALLEL_SELECT_THRESHOLD =
+        Integer.getInteger("db61b.parallelSelectThreshold", 1 << 16);
 
     /**
-     * A class that is essentially ArrayList<String>.  For technical reasons,
-     * we need to encapsulate ArrayList<String> like this because the
-     * underlying design of Java does not properly distinguish between
-     * different kinds of ArrayList at runtime (e.g., if you have a
-     * variable of type Object that was created from an ArrayList, there is
-     * no way to determine in general whether it is an ArrayList<String>,
-     * ArrayList<Integer>, or ArrayList<Object>).  This leads to annoying
-     * compiler warnings.  The trick of defining a new type avoids this
-     * issue.
+     * Largest estimated fraction of my rows satisfying the conditions an
+     * index answers for which scan uses that index (see usableIndices).
      */
-    private static class ValueList extends ArrayList<String> {
-    }
+    static final double INDEX_SELECTIVITY_LIMIT = 0.05;
 
     /**
      * My column titles.
@@ -540,6 +597,16 @@ class Table {
      * My columns. Row i consists of _columns[k].get(i) for all k.
      */
     private final ValueList[] _columns;
+    /**
+     * The zone map of each of my columns, kept current by add, or null
+     * if it has not yet been needed (see zoneMap).
+     */
+    private final ZoneMap[] _zoneMaps;
+    /**
+     * True iff the types of my columns were declared, rather than
+     * inferred from their values.
+     */
+    private final boolean _declared;
 
     /**
      * Rows in the database are supposed to be sorted. To do so, we
@@ -554,8 +621,27 @@ class Table {
      * so that we would not need _index.  But that would mean that inserting
      * a new row would require rearranging _rowSize lists (each list in
      * _columns) rather than just one.
+     * This is null for a table opened from columnar storage or built by
+     * a TableBuilder or ViewBuilder until it is first modified, since its
+     * rows are then stored in order.
+     */
+    private ArrayList<Integer> _index = new ArrayList<>();
+
+    /**
+     * Maps the hash of each row's values (as computed by Arrays.hashCode)
+     * to the positions in _columns of the rows having that hash, so that
+     * add can reject a duplicate row by checking only those candidates.
+     * Null until I am first modified if I was opened from columnar
+     * storage, built by a TableBuilder or ViewBuilder, or made by
+     * snapshot.
+     */
+    private HashMap<Integer, ArrayList<Integer>> _rowHashes =
+        new HashMap<>();
+
+    /**
+     * My secondary indices, each kept current by add.
      */
-    private final ArrayList<Integer> _index = new ArrayList<>();
+    private final ArrayList<Index> _indices = new ArrayList<>();
 
     /**
      * My number of rows (redundant, but convenient).
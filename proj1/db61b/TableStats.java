@@ -0,0 +1,269 @@
+package db61b;
+
+import java.util.Arrays;
+
+/** Statistics describing the contents of a Table at the time they were
+ *  gathered, for use in estimating the sizes of query results: its
+ *  number of rows and, for each column, an estimate of the number of
+ *  distinct values, the smallest and largest values, and an equi-depth
+ *  histogram.  The histogram of a column divides its values into
+ *  HISTOGRAM_BUCKETS buckets holding roughly equal numbers of rows and
+ *  records the boundaries between them.  Distinct counts come from a
+ *  HyperLogLog sketch of all rows (hashing the codes of dictionary-coded
+ *  columns rather than their strings), and histograms from a sample of at
+ *  most SAMPLE_SIZE rows evenly spaced through the table; when the table
+ *  is no larger than the sample, both are exact.
+ *  @author Bo Bi
+ */
+class TableStats {
+
+    /** Number of buckets in each histogram. */
+    static final int HISTOGRAM_BUCKETS = 8;
+    /** Largest number of rows examined to build histograms. */
+    static final int SAMPLE_SIZE = 1 << 14;
+
+    /** Statistics of the current contents of TABLE. */
+    TableStats(Table table) {
+        int n = table.columns();
+        _rows = table.size();
+        _titles = new String[n];
+        _types = new Type[n];
+        _distinct = new double[n];
+        _min = new String[n];
+        _max = new String[n];
+        _histograms = new String[n][];
+
+        int samples = Math.min(_rows, SAMPLE_SIZE);
+        Integer[] sample = new Integer[samples];
+        for (int i = 0; i < samples; i += 1) {
+            sample[i] = (int) ((long) i * _rows / samples);
+        }
+        for (int col = 0; col < n; col += 1) {
+            _titles[col] = table.getTitle(col);
+            _types[col] = table.getType(col);
+            analyze(table, col, sample);
+        }
+    }
+
+    /** Gather the statistics of column COL of TABLE, using the rows
+     *  stored at positions SAMPLE to build its histogram. */
+    private void analyze(Table table, int col, Integer[] sample) {
+        ValueList values = table.values(col);
+        Arrays.sort(sample, values::compare);
+
+        int buckets = Math.min(HISTOGRAM_BUCKETS,
+                               Math.max(1, sample.length - 1));
+        _histograms[col] = new String[sample.length == 0 ? 0 : buckets + 1];
+        for (int b = 0; b < _histograms[col].length; b += 1) {
+            _histograms[col][b] =
+                values.get(sample[b * (sample.length - 1) / buckets]);
+        }
+
+        if (sample.length == _rows) {
+            int distinct = Math.min(1, _rows);
+            for (int i = 1; i < sample.length; i += 1) {
+                if (values.compare(sample[i - 1], sample[i]) != 0) {
+                    distinct += 1;
+                }
+            }
+            _distinct[col] = distinct;
+        } else {
+            HyperLogLog sketch = new HyperLogLog();
+            if (values.getType().isNumeric()) {
+                for (int k = 0; k < _rows; k += 1) {
+                    sketch.add(HyperLogLog.hash(values.longAt(k)));
+                }
+            } else if (values.encode("") != ValueList.NOT_CODED) {
+                for (int k = 0; k < _rows; k += 1) {
+                    sketch.add(HyperLogLog.hash(values.codeAt(k)));
+                }
+            } else {
+                for (int k = 0; k < _rows; k += 1) {
+                    sketch.add(HyperLogLog.hash(values.get(k)));
+                }
+            }
+            _distinct[col] = Math.min(sketch.estimate(), _rows);
+        }
+
+        if (_rows > 0) {
+            ZoneMap zones = table.zoneMap(col);
+            int min = zones.minRow(0), max = zones.maxRow(0);
+            for (int b = 1; b < zones.blocks(); b += 1) {
+                if (values.compare(zones.minRow(b), min) < 0) {
+                    min = zones.minRow(b);
+                }
+                if (values.compare(zones.maxRow(b), max) > 0) {
+                    max = zones.maxRow(b);
+                }
+            }
+            _min[col] = values.get(min);
+            _max[col] = values.get(max);
+        }
+    }
+
+    /** Return the number of rows. */
+    int rows() {
+        return _rows;
+    }
+
+    /** Return the number of columns. */
+    int columns() {
+        return _titles.length;
+    }
+
+    /** Return the title of column COL. */
+    String getTitle(int col) {
+        return _titles[col];
+    }
+
+    /** Return the type of column COL. */
+    Type getType(int col) {
+        return _types[col];
+    }
+
+    /** Return the estimated number of distinct values in column COL. */
+    double distinct(int col) {
+        return _distinct[col];
+    }
+
+    /** Return the smallest value in column COL, or null if there are no
+     *  rows. */
+    String min(int col) {
+        return _min[col];
+    }
+
+    /** Return the largest value in column COL, or null if there are no
+     *  rows. */
+    String max(int col) {
+        return _max[col];
+    }
+
+    /** Return the boundaries of the buckets of the histogram of column
+     *  COL in increasing order, the first and last being the smallest
+     *  and largest values in the sample.  Empty if there are no rows. */
+    String[] histogram(int col) {
+        return _histograms[col];
+    }
+
+    /** Return the estimated fraction of the rows of my table that
+     *  satisfy COND, whose columns select from that table alone.  A
+     *  comparison with a literal is judged by the distinct count, range,
+     *  and histogram of its column (see fractionBelow); a comparison of
+     *  two columns is taken to be equal as often as if the column with
+     *  more distinct values were compared with a literal, and to satisfy
+     *  any other relation a third of the time. */
+    double selectivity(Condition cond) {
+        int col = findColumn(cond.getColumn1().getName());
+        if (col == -1 || _rows == 0) {
+            return 1;
+        }
+        Relation relation = cond.getRelation();
+        String literal = cond.getLiteral();
+        if (literal == null) {
+            int col2 = findColumn(cond.getColumn2().getName());
+            double distinct =
+                Math.max(_distinct[col], col2 == -1 ? 1 : _distinct[col2]);
+            switch (relation) {
+            case EQ:
+                return 1 / Math.max(1, distinct);
+            case NE:
+                return 1 - 1 / Math.max(1, distinct);
+            default:
+                return 1.0 / 3;
+            }
+        }
+        double equal =
+            compare(col, literal, _min[col]) < 0
+            || compare(col, literal, _max[col]) > 0 ? 0
+            : 1 / Math.max(1, _distinct[col]);
+        double less = fractionBelow(col, literal);
+        switch (relation) {
+        case EQ:
+            return equal;
+        case NE:
+            return 1 - equal;
+        case LT:
+            return less;
+        case LE:
+            return Math.min(1, less + equal);
+        case GT:
+            return Math.max(0, 1 - less - equal);
+        default:
+            return 1 - less;
+        }
+    }
+
+    /** Return the estimated fraction of the values in column COL that
+     *  are less than VALUE: the number of buckets of its histogram that
+     *  lie wholly below VALUE, plus half of the bucket that contains it,
+     *  divided by the number of buckets. */
+    private double fractionBelow(int col, String value) {
+        String[] bounds = _histograms[col];
+        int buckets = bounds.length - 1;
+        if (compare(col, value, bounds[0]) <= 0) {
+            return 0;
+        } else if (compare(col, value, bounds[buckets]) > 0) {
+            return 1;
+        }
+        int below = 0;
+        while (compare(col, bounds[below + 1], value) < 0) {
+            below += 1;
+        }
+        return (below + 0.5) / buckets;
+    }
+
+    /** Return <0, 0, or >0 depending on whether VALUE1 is less than,
+     *  equal to, or greater than VALUE2, comparing them as numbers if
+     *  column COL is numeric and both are numerals, and otherwise as
+     *  strings, as Condition does. */
+    private int compare(int col, String value1, String value2) {
+        if (_types[col].isNumeric() && Type.LONG.accepts(value1)
+            && Type.LONG.accepts(value2)) {
+            return Long.compare(Long.parseLong(value1),
+                                Long.parseLong(value2));
+        }
+        return value1.compareTo(value2);
+    }
+
+    /** Return the number of column COL of my table whose title is TITLE,
+     *  or -1 if there is none. */
+    int findColumn(String title) {
+        for (int col = 0; col < _titles.length; col += 1) {
+            if (_titles[col].equals(title)) {
+                return col;
+            }
+        }
+        return -1;
+    }
+
+    /** Print me on the standard output, one line for the table and two
+     *  for each of its columns. */
+    void print() {
+        System.out.printf("  %d rows%n", _rows);
+        for (int col = 0; col < _titles.length; col += 1) {
+            System.out.printf("  %s %s: %d distinct", _titles[col],
+                              _types[col].getName(),
+                              Math.round(_distinct[col]));
+            if (_min[col] != null) {
+                System.out.printf(", %s to %s", _min[col], _max[col]);
+            }
+            System.out.println();
+            System.out.printf("    histogram: %s%n",
+                              String.join(" | ", _histograms[col]));
+        }
+    }
+
+    /** Number of rows. */
+    private final int _rows;
+    /** Column titles. */
+    private final String[] _titles;
+    /** Column types. */
+    private final Type[] _types;
+    /** Estimated number of distinct values in each column. */
+    private final double[] _distinct;
+    /** Smallest and largest values in each column, or null if there are
+     *  no rows. */
+    private final String[] _min, _max;
+    /** The histogram of each column (see histogram). */
+    private final String[][] _histograms;
+}
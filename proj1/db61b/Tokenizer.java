@@ -1,6 +1,7 @@
 package db61b;
 
 import java.io.PrintStream;
+import java.io.Reader;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.ArrayList;
@@ -8,7 +9,10 @@ import java.util.Scanner;
 
 import static db61b.Utils.*;
 
-/** Represents a stream of db61b tokens read from a given Scanner.
+/** Represents a stream of db61b tokens read from a given Reader, which
+ *  are found by a Lexer, or from a given Scanner, in which they are found
+ *  by matching TOKEN_PATN.  The two find the same tokens; the second is
+ *  slower, but is kept to check the first against.
  *  @author P. N. Hilfinger. */
 class Tokenizer {
 
@@ -45,6 +49,14 @@ class Tokenizer {
         _shouldPrompt = true;
         _k = 0;
         _mat = Pattern.compile(".").matcher("");
+        _kinds = new ArrayList<>();
+    }
+
+    /** A Tokenizer that reads tokens from INPUT, and prompts on PROMPTER,
+     *  if it is non-null. */
+    Tokenizer(Reader input, PrintStream prompter) {
+        this((Scanner) null, prompter);
+        _lexer = new Lexer(input);
     }
 
     /** Read the next potential token and add it to _buffer.  Filters
@@ -52,6 +64,10 @@ class Tokenizer {
      *  Throws DBException on encountering a lexical error (such as an
      *  unterminated literal). */
     private void readToken() {
+        if (_lexer != null) {
+            lexToken();
+            return;
+        }
         while (true) {
             prompt();
             String token = _input.findWithinHorizon(TOKEN_PATN, 0);
@@ -71,6 +87,39 @@ class Tokenizer {
                 continue;
             }
             _buffer.add(token);
+            _kinds.add(null);
+            _continued = !token.equals(";");
+            return;
+        }
+    }
+
+    /** Read the next token with _lexer and add it and its kind to
+     *  _buffer and _kinds, with the same effects as readToken has when
+     *  reading from a Scanner. */
+    private void lexToken() {
+        while (true) {
+            prompt();
+            Lexer.Kind kind = _lexer.next();
+            String token;
+            switch (kind) {
+            case END:
+                token = "*EOF*";
+                break;
+            case UNTERMINATED_LITERAL:
+                throw error("unterminated literal constant");
+            case UNTERMINATED_COMMENT:
+                throw error("unterminated comment");
+            case COMMENT:
+                continue;
+            case NEWLINE:
+                _shouldPrompt = true;
+                continue;
+            default:
+                token = _lexer.text();
+                break;
+            }
+            _buffer.add(token);
+            _kinds.add(kind);
             _continued = !token.equals(";");
             return;
         }
@@ -145,12 +194,36 @@ class Tokenizer {
 
 
     /** Return true iff the next token matches P.  Throws DBException on
-     *  encountering a lexical error. */
+     *  encountering a lexical error.  When P is IDENTIFIER, LITERAL, or
+     *  RELATION and the token was found by a Lexer, its kind decides
+     *  without matching P. */
     boolean nextIs(Pattern p) {
         String token = peek();
+        Lexer.Kind kind = _kinds.get(_k);
+        if (kind != null && p == IDENTIFIER) {
+            return kind == Lexer.Kind.IDENTIFIER;
+        } else if (kind != null && p == RELATION) {
+            return kind == Lexer.Kind.RELATION;
+        } else if (kind != null && p == LITERAL) {
+            return kind == Lexer.Kind.LITERAL && !hasLineSeparator(token);
+        }
         return _mat.usePattern(p).reset(token).matches();
     }
 
+    /** Return true iff TOKEN contains \u0085, \u2028, or \u2029.  These
+     *  end a line but, unlike a newline or return, may appear in a
+     *  literal token, which then does not match LITERAL, since '.' does
+     *  not match them. */
+    private static boolean hasLineSeparator(String token) {
+        for (int i = 0; i < token.length(); i += 1) {
+            char c = token.charAt(i);
+            if (c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /** Return true iff the next token equals P.  Throws DBException on
      *  encountering a lexical error. */
     boolean nextIs(String p) {
@@ -185,6 +258,7 @@ class Tokenizer {
     /** Set the rewind point to the current position. */
     void flush() {
         _buffer.subList(0, _k).clear();
+        _kinds.subList(0, _k).clear();
         _k = 0;
     }
 
@@ -211,10 +285,15 @@ class Tokenizer {
 
     /** Matcher used for pattern matching. */
     private Matcher _mat;
-    /** The character input source. */
+    /** The character input source, if not read by _lexer. */
     private Scanner _input;
+    /** The lexer reading the character input, if there is one. */
+    private Lexer _lexer;
     /** All tokens read since the last flush or beginning of input. */
     private ArrayList<String> _buffer;
+    /** The kind of each token in _buffer, if found by _lexer, and
+     *  otherwise null. */
+    private ArrayList<Lexer.Kind> _kinds;
     /** Output for prompts.  Null if prompts not used. */
     private PrintStream _prompter;
     /** False iff the next token is expected to start a command. */
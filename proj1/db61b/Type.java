@@ -0,0 +1,154 @@
+package db61b;
+
+import static db61b.Utils.error;
+
+/** The types of values that a column of a Table may hold.  Every value
+ *  is written and read as a string; a numeric type restricts a column to
+ *  strings that are the canonical decimal representations of numbers in
+ *  its range (as produced by Integer.toString or Long.toString), stores
+ *  them as numbers, and orders them numerically.
+ *  @author Bo Bi
+ */
+enum Type {
+    /** Arbitrary strings, ordered lexicographically. */
+    STRING("string"),
+    /** 32-bit integers. */
+    INT("int"),
+    /** 64-bit integers. */
+    LONG("long");
+
+    /** A type whose name in the create statement is NAME. */
+    Type(String name) {
+        _name = name;
+    }
+
+    /** Return the type whose name is NAME. */
+    static Type forName(String name) {
+        for (Type type : values()) {
+            if (type._name.equals(name)) {
+                return type;
+            }
+        }
+        throw error("unknown type: %s", name);
+    }
+
+    /** Return the narrowest type that accepts the values in column COL
+     *  of every one of ROWS, or STRING if there are no rows. */
+    static Type infer(Iterable<String[]> rows, int col) {
+        if (!rows.iterator().hasNext()) {
+            return STRING;
+        }
+        return infer(rows, col, INT);
+    }
+
+    /** Return the narrowest type that is at least as wide as NARROWEST
+     *  and accepts the values in column COL of every one of ROWS. */
+    static Type infer(Iterable<String[]> rows, int col, Type narrowest) {
+        Type type = narrowest;
+        for (String[] row : rows) {
+            if (type == STRING) {
+                break;
+            }
+            while (!type.accepts(row[col])) {
+                type = type.wider();
+            }
+        }
+        return type;
+    }
+
+    /** Return my name, as used in create statements. */
+    String getName() {
+        return _name;
+    }
+
+    /** Return the next wider type than me: one that accepts all my
+     *  values and more. */
+    Type wider() {
+        switch (this) {
+        case INT:
+            return LONG;
+        default:
+            return STRING;
+        }
+    }
+
+    /** Return true iff my values are numbers. */
+    boolean isNumeric() {
+        return this != STRING;
+    }
+
+    /** Return true iff VALUE is a valid value of mine. */
+    boolean accepts(String value) {
+        switch (this) {
+        case INT:
+            return isCanonical(value, 10);
+        case LONG:
+            return isCanonical(value, 19);
+        default:
+            return true;
+        }
+    }
+
+    /** Return <0, 0, or >0 depending on whether VALUE0 is less than,
+     *  equal to, or greater than VALUE1, both of which I accept.  Since
+     *  numeric values are canonical, they are compared by sign, then
+     *  length, then digits, without being parsed. */
+    int compare(String value0, String value1) {
+        if (!isNumeric()) {
+            return value0.compareTo(value1);
+        }
+        boolean negative0 = value0.startsWith("-"),
+            negative1 = value1.startsWith("-");
+        if (negative0 != negative1) {
+            return negative0 ? -1 : 1;
+        }
+        int c = Integer.compare(value0.length(), value1.length());
+        if (c == 0) {
+            c = value0.compareTo(value1);
+        }
+        return negative0 ? -c : c;
+    }
+
+    /** Return a new, empty ValueList for holding my values. */
+    ValueList newValueList() {
+        switch (this) {
+        case INT:
+            return new IntValueList();
+        case LONG:
+            return new LongValueList();
+        default:
+            return new DictionaryValueList();
+        }
+    }
+
+    /** Return true iff VALUE is the canonical representation of a number
+     *  in my range, which is that of integers with at most MAXDIGITS
+     *  digits. */
+    private boolean isCanonical(String value, int maxDigits) {
+        int start = value.startsWith("-") ? 1 : 0;
+        int n = value.length() - start;
+        if (n == 0 || n > maxDigits
+            || value.charAt(start) == '0' && (n > 1 || start == 1)) {
+            return false;
+        }
+        for (int i = start; i < value.length(); i += 1) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        try {
+            if (this == INT) {
+                Integer.parseInt(value);
+            } else {
+                Long.parseLong(value);
+            }
+            return true;
+        } catch (NumberFormatException excp) {
+            return false;
+        }
+    }
+
+    /** My name. */
+    private final String _name;
+}
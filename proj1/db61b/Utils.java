@@ -1,5 +1,8 @@
 package db61b;
 
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
 import java.util.regex.Pattern;
 
 /** Various utilities used by other sources.
@@ -25,6 +28,18 @@ class Utils {
         return new DBException(format(s, args));
     }
 
+    /** Return a new writer on the standard output that passes on what is
+     *  written to it in blocks of OUTPUT_BUFFER_SIZE characters, so that
+     *  large outputs are not written a line at a time.  It must be
+     *  flushed once done. */
+    static PrintWriter standardOutput() {
+        return new PrintWriter(new BufferedWriter(
+            new OutputStreamWriter(System.out), OUTPUT_BUFFER_SIZE));
+    }
+
+    /** Size, in characters, of the buffer of standardOutput. */
+    static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+
 }
 
 
@@ -0,0 +1,94 @@
+package db61b;
+
+/** The values of one column of a Table, indexed by the position at which
+ *  each row is stored (see Table.value).  Values are only ever appended.
+ *  Subclasses choose how the values are represented.
+ *  @author Bo Bi
+ */
+abstract class ValueList {
+
+    /** Value returned by encode when I do not represent my values as
+     *  codes at all. */
+    static final int NOT_CODED = -2;
+
+    /** Value returned by encode for a value I do not contain. */
+    static final int ABSENT = -1;
+
+    /** Return the Type of my values. */
+    Type getType() {
+        return Type.STRING;
+    }
+
+    /** Return the number of values I contain. */
+    abstract int size();
+
+    /** Return my Kth value (0 <= K < size()). */
+    abstract String get(int k);
+
+    /** Append VALUE to me. */
+    abstract void add(String value);
+
+    /** Return <0, 0, or >0 depending on whether my K0th value is less
+     *  than, equal to, or greater than my K1th. */
+    int compare(int k0, int k1) {
+        return get(k0).compareTo(get(k1));
+    }
+
+    /** Return my Kth value as a number, assuming getType() is
+     *  numeric. */
+    long longAt(int k) {
+        throw new UnsupportedOperationException();
+    }
+
+    /** Return true iff my Kth value is VALUE. */
+    boolean matches(int k, String value) {
+        return get(k).equals(value);
+    }
+
+    /** If I represent each distinct value by an integer code, return the
+     *  code for VALUE, or ABSENT if I do not contain VALUE.  Otherwise,
+     *  return NOT_CODED.  Two of my values are equal iff their codes
+     *  are. */
+    int encode(String value) {
+        return NOT_CODED;
+    }
+
+    /** Return the code of my Kth value, assuming encode does not return
+     *  NOT_CODED. */
+    int codeAt(int k) {
+        throw new UnsupportedOperationException();
+    }
+
+    /** Return <0, 0, or >0 depending on whether the K0th value of
+     *  VALUES0 is less than, equal to, or greater than the K1th value of
+     *  VALUES1, comparing numerically if both lists are numeric and as
+     *  strings otherwise. */
+    static int compare(ValueList values0, int k0, ValueList values1, int k1) {
+        if (values0.getType().isNumeric() && values1.getType().isNumeric()) {
+            return Long.compare(values0.longAt(k0), values1.longAt(k1));
+        }
+        return values0.get(k0).compareTo(values1.get(k1));
+    }
+
+    /** Return a ValueList with the same values as me to which values
+     *  may be added: me, unless I am read-only.  The Table that owns me
+     *  calls this before each addition. */
+    ValueList mutable() {
+        return this;
+    }
+
+    /** Return a ValueList with my current values that is unaffected by
+     *  later additions to me, and that another thread may read while
+     *  values are being added to me.  By default, this is me, which
+     *  suffices for lists that are never modified. */
+    ValueList snapshot() {
+        return this;
+    }
+
+    /** Return a ValueList with the same values as me that is better
+     *  suited to them than I am, or me if there is none.  The Table
+     *  that owns me calls this after each addition. */
+    ValueList adapt() {
+        return this;
+    }
+}
@@ -0,0 +1,156 @@
+package db61b;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.List;
+
+/** Accumulates the rows of the result of a select, as the stored
+ *  positions of the rows of the tables selected from, and then builds
+ *  it all at once as a Table whose columns are ProjectedValueLists, or
+ *  prints it directly.  Unlike a TableBuilder, it never copies a value:
+ *  build sorts the positions (in parallel) by comparing the selected
+ *  values in place, drops adjacent duplicates, and leaves the result
+ *  referring to the values of the tables selected from until it is
+ *  first modified.  Likewise, print writes each value straight from
+ *  the table it is selected from.
+ *  @author Bo Bi
+ */
+class ViewBuilder {
+
+    /** A builder for a table whose columns are given by COLUMNTITLES and
+     *  whose values are those extracted by the corresponding COLUMNS. */
+    ViewBuilder(List<String> columnTitles, List<Column> columns) {
+        _titles = columnTitles.toArray(new String[columnTitles.size()]);
+        _columns = columns.toArray(new Column[columns.size()]);
+        int tables = 0;
+        for (Column column : _columns) {
+            tables = Math.max(tables, column.getTableIndex() + 1);
+        }
+        _rows = new int[tables][16];
+    }
+
+    /** Add the row whose column values are extracted by my columns from
+     *  the rows stored at positions ROWS[k] of the kth tables from which
+     *  they select (see Column.rowFrom(int[])).  ROWS may have
+     *  extra elements for tables from which no column selects. */
+    void add(int[] rows) {
+        grow();
+        for (int k = 0; k < _rows.length; k += 1) {
+            _rows[k][_size] = rows[k];
+        }
+        _size += 1;
+    }
+
+    /** Add the row whose column values are extracted by my columns from
+     *  the rows stored at positions ROW1 and ROW2 of the first and second
+     *  tables from which they select (see Column.getFrom(int, int)). */
+    void add(int row1, int row2) {
+        grow();
+        _rows[0][_size] = row1;
+        if (_rows.length > 1) {
+            _rows[1][_size] = row2;
+        }
+        _size += 1;
+    }
+
+    /** Add the row whose column values are extracted by my columns, which
+     *  select from a single table, from the row stored at position ROW of
+     *  that table. */
+    void add(int row) {
+        add(row, row);
+    }
+
+    /** Return a new Table containing the distinct rows added to me.  Its
+     *  column types are those of the columns selected from, and are not
+     *  declared (see Table). */
+    Table build() {
+        int[][] rows = distinctRows();
+        ValueList[] columns = new ValueList[_columns.length];
+        for (int j = 0; j < columns.length; j += 1) {
+            columns[j] =
+                new ProjectedValueList(_columns[j].getValues(),
+                                       rows[_columns[j].getTableIndex()]);
+        }
+        return new Table(_titles, columns);
+    }
+
+    /** Print the distinct rows added to me on OUT in the format of
+     *  Table.print, in the order of the Table that build would return,
+     *  and return the number printed. */
+    int print(PrintWriter out) {
+        int[][] rows = distinctRows();
+        int n = rows.length == 0 ? 0 : rows[0].length;
+        for (int i = 0; i < n; i += 1) {
+            out.print(' ');
+            for (Column column : _columns) {
+                out.print(' ');
+                out.print(column.getValues()
+                          .get(rows[column.getTableIndex()][i]).trim());
+            }
+            out.println();
+        }
+        return n;
+    }
+
+    /** Return the rows added to me in lexicographic order of their
+     *  selected values, with duplicates removed, as an array holding
+     *  the stored positions of the rows of each table selected from
+     *  (like _rows). */
+    private int[][] distinctRows() {
+        int[] order = new int[_size];
+        for (int i = 0; i < _size; i += 1) {
+            order[i] = i;
+        }
+        IntSort.sort(order, this::compare);
+
+        int[][] rows = new int[_rows.length][_size];
+        int n = 0;
+        for (int i = 0; i < _size; i += 1) {
+            if (n > 0 && compare(order[i - 1], order[i]) == 0) {
+                continue;
+            }
+            for (int k = 0; k < rows.length; k += 1) {
+                rows[k][n] = _rows[k][order[i]];
+            }
+            n += 1;
+        }
+        for (int k = 0; k < rows.length; k += 1) {
+            rows[k] = Arrays.copyOf(rows[k], n);
+        }
+        return rows;
+    }
+
+    /** Make room for one more row. */
+    private void grow() {
+        if (_size == _rows[0].length) {
+            for (int k = 0; k < _rows.length; k += 1) {
+                _rows[k] = Arrays.copyOf(_rows[k], 2 * _size);
+            }
+        }
+    }
+
+    /** Return <0, 0, or >0 depending on whether the Ith row added to me
+     *  is lexicographically less than, equal to, or greater than the Jth.
+     *  The result is 0 only if the rows have identical values. */
+    private int compare(int i, int j) {
+        for (Column column : _columns) {
+            int[] rows = _rows[column.getTableIndex()];
+            int c = column.getValues().compare(rows[i], rows[j]);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /** The titles of the table's columns. */
+    private final String[] _titles;
+    /** The columns from which the table's values are extracted. */
+    private final Column[] _columns;
+    /** _rows[k] holds the stored positions in the kth table selected from
+     *  of the rows added so far; only the first _size of each are in
+     *  use. */
+    private final int[][] _rows;
+    /** The number of rows added so far. */
+    private int _size;
+}
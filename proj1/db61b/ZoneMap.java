@@ -0,0 +1,109 @@
+package db61b;
+
+import java.util.Arrays;
+import java.util.function.IntBinaryOperator;
+
+/** A summary of the values of one column of a Table that divides its
+ *  rows, by stored position (see Table.value), into blocks of
+ *  BLOCK_SIZE consecutive rows and records the rows holding the
+ *  smallest and largest value of each block.  A scan for values bearing
+ *  some relation to a literal can skip any block whose range of values
+ *  rules it out.  Since a table loaded from a file stores its rows in
+ *  lexicographic order, the blocks of its first column in particular
+ *  hold narrow, disjoint ranges.
+ *  @author Bo Bi
+ */
+class ZoneMap {
+
+    /** Log base 2 of BLOCK_SIZE. */
+    static final int BLOCK_BITS = 12;
+    /** Number of rows in each block (except perhaps the last). */
+    static final int BLOCK_SIZE = 1 << BLOCK_BITS;
+
+    /** A summary of no rows. */
+    ZoneMap() {
+        this(new int[INITIAL_CAPACITY], new int[INITIAL_CAPACITY], 0);
+    }
+
+    /** A summary of VALUES. */
+    ZoneMap(ValueList values) {
+        this(values.size(), values::compare);
+    }
+
+    /** A summary of SIZE rows whose values are ordered by COMPARE, which
+     *  returns <0, 0, or >0 depending on whether the value of its first
+     *  row is less than, equal to, or greater than that of its second. */
+    ZoneMap(int size, IntBinaryOperator compare) {
+        this();
+        for (int k = 0; k < size; k += 1) {
+            add(k, compare);
+        }
+    }
+
+    /** A summary of BLOCKS blocks, where MINROWS[b] and MAXROWS[b] are
+     *  the rows with the smallest and largest values in block b. */
+    ZoneMap(int[] minRows, int[] maxRows, int blocks) {
+        _minRows = minRows;
+        _maxRows = maxRows;
+        _blocks = blocks;
+    }
+
+    /** Return the number of blocks I summarize. */
+    int blocks() {
+        return _blocks;
+    }
+
+    /** Return the row holding the smallest value in block B. */
+    int minRow(int b) {
+        return _minRows[b];
+    }
+
+    /** Return the row holding the largest value in block B. */
+    int maxRow(int b) {
+        return _maxRows[b];
+    }
+
+    /** Include row K of VALUES, which must be the row following the last
+     *  one I summarize. */
+    void add(ValueList values, int k) {
+        add(k, values::compare);
+    }
+
+    /** Include row K, which must be the row following the last one I
+     *  summarize, where rows are ordered by COMPARE (see
+     *  ZoneMap(int, IntBinaryOperator)). */
+    void add(int k, IntBinaryOperator compare) {
+        int b = k >>> BLOCK_BITS;
+        if (b == _blocks) {
+            if (b == _minRows.length) {
+                int capacity = Math.max(2 * b, INITIAL_CAPACITY);
+                _minRows = Arrays.copyOf(_minRows, capacity);
+                _maxRows = Arrays.copyOf(_maxRows, capacity);
+            }
+            _minRows[b] = _maxRows[b] = k;
+            _blocks += 1;
+        } else if (compare.applyAsInt(k, _minRows[b]) < 0) {
+            _minRows[b] = k;
+        } else if (compare.applyAsInt(k, _maxRows[b]) > 0) {
+            _maxRows[b] = k;
+        }
+    }
+
+    /** Return a copy of me that is unaffected by later additions. */
+    ZoneMap snapshot() {
+        return new ZoneMap(Arrays.copyOf(_minRows, _blocks),
+                           Arrays.copyOf(_maxRows, _blocks), _blocks);
+    }
+
+    /** Initial length of _minRows and _maxRows. */
+    private static final int INITIAL_CAPACITY = 4;
+
+    /** The row with the smallest value in each block; only the first
+     *  _blocks are in use. */
+    private int[] _minRows;
+    /** The row with the largest value in each block; only the first
+     *  _blocks are in use. */
+    private int[] _maxRows;
+    /** The number of blocks I summarize. */
+    private int _blocks;
+}
@@ -0,0 +1,116 @@
+#!/usr/bin/env python
+# -*-Python-*-
+
+"""Differential test of the two ways db61b.Main divides its input into
+tokens.  Runs the program on random inputs, built from fragments of
+commands, literals, comments, blanks, line ends, and stray characters,
+and from statements containing random literals, once with
+-Ddb61b.lexer=regex and once with the default Lexer, and reports every
+input for which the two runs' outputs differ.  Each run starts in an
+empty directory, so that tables stored by one run are not loaded by
+another.  The classes are found through CLASSPATH."""
+
+import getopt
+import os
+import random
+import shutil
+import subprocess
+import sys
+import tempfile
+
+PIECES = [
+    "create table t (a int, b);",
+    "insert into t values ('1', 'x'), ('2', 'y');",
+    "select a, b from t where a >= '1' and b != 'x';",
+    "select a from t where b = a;", "print t;",
+    "select", "from", "t", "where", "insert", "into", "values", "quit",
+    "explain", "stats", "load", "store", "(", ")", ",", ";",
+    "'", "''", "'abc", "'a,b'", "' '", "'q\u0085'", "'r '",
+    "'s '", "'café'",
+    "/*", "*/", "/* c */", "/*   */", "/", "*",
+    "\n", "\r\n", "\r", " ", "\t", "\f", "\x0b", "\x1c", "\u0085",
+    " ", "<", ">", "<=", ">=", "!", "!=", "=", "==",
+    "x", "_y1", "12", "a9", "é", "\U0001F600",
+]
+
+# Start of every input, so that statements using t may reach their
+# literals.
+PREFIX = "create table t (a int, b);\n"
+
+# Characters of the random literals placed where a literal may appear.
+LITERAL_CHARS = "ab ,'\n\r\u0085\u2028\u2029\t/*é"
+
+# Statements into which random literals are placed.
+TEMPLATES = [
+    "insert into t values ({});",
+    "select a from t where b = {};",
+    "select b from t where a < {} and b >= 'x';",
+]
+
+LEXERS = ["regex", "lexer"]
+
+
+def literal(rand):
+    """Return a random quoted literal, which may be malformed."""
+    return "'{}'".format("".join(rand.choice(LITERAL_CHARS)
+                                 for _ in range(rand.randint(0, 4))))
+
+
+def piece(rand):
+    """Return a random fragment of input."""
+    if rand.random() < 0.2:
+        return rand.choice(TEMPLATES).format(literal(rand))
+    return rand.choice(PIECES)
+
+
+def run(text, lexer):
+    """Return the standard output and error of db61b.Main, using LEXER,
+    on input TEXT."""
+    directory = tempfile.mkdtemp()
+    try:
+        result = subprocess.run(
+            ["java", "-Dfile.encoding=UTF-8", "-Ddb61b.lexer=" + lexer,
+             "db61b.Main"],
+            input=text.encode("utf-8"), cwd=directory,
+            stdout=subprocess.PIPE, stderr=subprocess.PIPE, timeout=60)
+        return result.stdout + result.stderr
+    finally:
+        shutil.rmtree(directory)
+
+
+count = 100
+seed = 1
+try:
+    opts, args = getopt.getopt(sys.argv[1:], '', ['count=', 'seed='])
+    for opt, val in opts:
+        if opt == '--count':
+            count = int(val)
+        elif opt == '--seed':
+            seed = int(val)
+        else:
+            assert False
+    assert not args
+except:
+    print("Usage: python3 lexfuzz.py [--count=N] [--seed=S]",
+          file=sys.stderr)
+    sys.exit(1)
+
+os.environ["CLASSPATH"] = os.pathsep.join(
+    os.path.abspath(entry)
+    for entry in os.environ.get("CLASSPATH", ".").split(os.pathsep))
+
+rand = random.Random(seed)
+failures = 0
+for i in range(count):
+    text = PREFIX + "".join(piece(rand)
+                            for _ in range(rand.randint(1, 60)))
+    outputs = [run(text, lexer) for lexer in LEXERS]
+    if outputs[0] != outputs[1]:
+        failures += 1
+        print("** Outputs differ on input {!r}".format(text))
+        for lexer, output in zip(LEXERS, outputs):
+            print("+--- {} ---".format(lexer))
+            print(output.decode("utf-8", "replace"))
+
+print("{} of {} inputs gave different outputs.".format(failures, count))
+sys.exit(0 if failures == 0 else 1)
@@ -5,7 +5,7 @@ import testing
 import sys, re
 import io
 import getopt
-from os.path import join
+from os.path import join, exists
 
 class Proj1_Tester(testing.Tester):
     def output_filter(self, id, content):
@@ -20,7 +20,11 @@ class Proj1_Tester(testing.Tester):
             blanks to single blanks.
          4. Removes blank lines
          5. Converts any error line to the single word ERROR, and removes any
-            lines that follow it."""
+            lines that follow it.
+         6. When testing with extra Java flags (see --java-flags), which
+            may select parallel versions of operators, removes the words
+            "parallel" and "partitioned" from the operators in query
+            plans."""
 
         out = io.StringIO()
 
@@ -30,6 +34,8 @@ class Proj1_Tester(testing.Tester):
 
            line = line.rstrip()
            line = re.sub(r' +', ' ', line)
+           if java_flags:
+              line = re.sub(r'\b(parallel|partitioned) ', '', line)
            if line == '':
               continue
            if re.search(r'(?i)error', line):
@@ -44,24 +50,30 @@ class Proj1_Tester(testing.Tester):
         result = list(super().input_files(id))
         content = testing.contents(self.standard_input_file(id))
         for db in re.findall(r'(?:^\s*load|;\s*load)\s+(\w+)', content):
-            result.append((db + ".db",
-                           join(self.base_dir(id), db + ".db"), None))
+            for name in db + ".db", db + ".dbc":
+                if exists(join(self.base_dir(id), name)):
+                    result.append((name, join(self.base_dir(id), name),
+                                   None))
         return result
 
 show=None
+java_flags=""
 try:
-    opts, args = getopt.getopt(sys.argv[1:], '', ['show='])
+    opts, args = getopt.getopt(sys.argv[1:], '', ['show=', 'java-flags='])
     for opt, val in opts:
         if opt == '--show':
             show = int(val)
+        elif opt == '--java-flags':
+            java_flags = val + " "
         else:
             assert False
 except:
-    print("Usage: python3 tester.py [--show=N] TEST.in...",
-          file=sys.stderr)
+    print("Usage: python3 tester.py [--show=N] [--java-flags=FLAGS] "
+          "TEST.in...", file=sys.stderr)
     sys.exit(1)
 
-tester = Proj1_Tester(tested_program="java -ea db61b.Main",
+tester = Proj1_Tester(tested_program="java -ea -Dfile.encoding=UTF-8 "
+                                     + java_flags + "db61b.Main",
                       report_limit=show)
 
 sys.exit(0 if tester.test_all(args) else 1)